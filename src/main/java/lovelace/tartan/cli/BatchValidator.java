@@ -0,0 +1,272 @@
+package lovelace.tartan.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import lovelace.tartan.latex.LaTeXReader;
+import lovelace.tartan.model.Dance;
+import lovelace.tartan.model.ProgramElement;
+import lovelace.tartan.model.ProgramMetadata;
+import lovelace.util.Pair;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A headless tool to check that every LaTeX program in a directory tree can be read,
+ * for example as a nightly check over an archive of past programs. It finds every
+ * {@code .tex} file under the directories (or among the files) named on its command
+ * line, parses them on a pool of worker threads, and reports how long each took to
+ * read and parse, why any failed, and the overall throughput. Each file is parsed as
+ * it is read, so a worker never holds a whole file in memory.
+ * <p>
+ * Usage: {@code BatchValidator [--threads=N] path...}. The exit status is 0 if every
+ * file was read, 1 if any could not be, and 2 if the arguments were invalid or a
+ * directory could not be searched.
+ * <p>
+ * Nothing here uses AWT or Swing, so this runs on machines without a display.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class BatchValidator {
+	private static final Logger LOGGER = Logger.getLogger(BatchValidator.class.getName());
+
+	private static final String THREADS_OPTION = "--threads=";
+
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+	private static final double BYTES_PER_MEBIBYTE = 1024.0 * 1024.0;
+
+	/**
+	 * The outcome of reading one file.
+	 *
+	 * @param file   the file
+	 * @param bytes  its size
+	 * @param nanos  how long it took to read and parse
+	 * @param dances how many dances it contains, if it could be read
+	 * @param error  why it could not be read, or null if it could
+	 */
+	private record FileResult(Path file, long bytes, long nanos, int dances,
+	                          @Nullable String error) {
+	}
+
+	/**
+	 * The reader to parse all the files with. A reader keeps no state between parses,
+	 * so one is shared by all the workers.
+	 */
+	private final LaTeXReader reader = new LaTeXReader();
+	private final PrintStream out;
+	private final int threads;
+
+	/**
+	 * @param out     where to write the report
+	 * @param threads how many files to parse at once
+	 */
+	public BatchValidator(final PrintStream out, final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Must use at least one thread");
+		}
+		this.out = out;
+		this.threads = threads;
+	}
+
+	/**
+	 * Find where in a file an error was reported, reading it again since it was not
+	 * kept in memory. This is only done for files that failed to parse.
+	 *
+	 * @return "line N" for the line number (counting from 1) of the given character
+	 * index in the file, or the index itself if the file can no longer be read
+	 */
+	@SuppressWarnings("HardcodedLineSeparator")
+	private static String lineOf(final Path file, final int index) {
+		int line = 1;
+		try (final Reader in = Files.newBufferedReader(file)) {
+			for (int i = 0; i < index; i++) {
+				final int character = in.read();
+				if (character < 0) {
+					break;
+				} else if (character == '\n') {
+					line++;
+				}
+			}
+		} catch (final IOException except) {
+			LOGGER.log(Level.FINE, "I/O error rereading " + file, except);
+			return "character %d".formatted(index);
+		}
+		return "line %d".formatted(line);
+	}
+
+	private FileResult validate(final Path file) {
+		final long bytes;
+		try {
+			bytes = Files.size(file);
+		} catch (final IOException except) {
+			LOGGER.log(Level.FINE, "I/O error reading " + file, except);
+			return new FileResult(file, 0, 0, 0,
+					"I/O error: %s".formatted(except));
+		}
+		final long start = System.nanoTime();
+		try (final BufferedReader in = Files.newBufferedReader(file)) {
+			final Pair<ProgramMetadata, List<ProgramElement>> result =
+					reader.readLaTeXProgram(in);
+			final long nanos = System.nanoTime() - start;
+			final int dances = (int) result.getSecond().stream()
+					                         .filter(Dance.class::isInstance).count();
+			return new FileResult(file, bytes, nanos, dances, null);
+		} catch (final IOException except) {
+			LOGGER.log(Level.FINE, "I/O error reading " + file, except);
+			return new FileResult(file, bytes, System.nanoTime() - start, 0,
+					"I/O error: %s".formatted(except));
+		} catch (final ParseException except) {
+			return new FileResult(file, bytes, System.nanoTime() - start, 0,
+					"%s: %s".formatted(lineOf(file, except.getErrorOffset()),
+							except.getMessage()));
+		} catch (final RuntimeException except) {
+			// A bug in the parser shouldn't stop us checking the other files.
+			LOGGER.log(Level.SEVERE, "Unexpected error parsing " + file, except);
+			return new FileResult(file, bytes, System.nanoTime() - start, 0,
+					"unexpected error: %s".formatted(except));
+		}
+	}
+
+	private static boolean isLaTeX(final Path file) {
+		return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".tex");
+	}
+
+	/**
+	 * Find the LaTeX files to check.
+	 *
+	 * @param paths the directories to search, and files to check whatever their names
+	 * @return the files to check, in a stable order
+	 * @throws IOException if a directory could not be searched
+	 */
+	private static List<Path> findFiles(final List<Path> paths) throws IOException {
+		final List<Path> retval = new ArrayList<>();
+		for (final Path path : paths) {
+			if (Files.isDirectory(path)) {
+				try (final Stream<Path> stream = Files.walk(path)) {
+					stream.filter(Files::isRegularFile)
+							.filter(BatchValidator::isLaTeX)
+							.sorted().forEachOrdered(retval::add);
+				}
+			} else {
+				retval.add(path);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Check all the LaTeX files under the given paths, reporting on each as we go and
+	 * summarizing at the end.
+	 *
+	 * @param paths the directories to search, and files to check whatever their names
+	 * @return whether every file could be read
+	 * @throws IOException if a directory could not be searched
+	 */
+	public boolean validate(final List<Path> paths) throws IOException {
+		final List<Path> files = findFiles(paths);
+		final long start = System.nanoTime();
+		final List<Future<FileResult>> futures = new ArrayList<>(files.size());
+		int failures = 0;
+		long totalBytes = 0;
+		long totalNanos = 0;
+		int totalDances = 0;
+		try (final ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+			for (final Path file : files) {
+				futures.add(executor.submit(() -> validate(file)));
+			}
+			// Report in the order the files were found, not the order they finish, so
+			// that one night's report can be compared with another's.
+			for (final Future<FileResult> future : futures) {
+				final FileResult result = future.get();
+				totalBytes += result.bytes();
+				totalNanos += result.nanos();
+				if (result.error() == null) {
+					totalDances += result.dances();
+					out.printf("OK    %9.2f ms  %4d dances  %s%n",
+							result.nanos() / NANOS_PER_MILLI, result.dances(),
+							result.file());
+				} else {
+					failures++;
+					out.printf("FAIL  %9.2f ms  %s: %s%n",
+							result.nanos() / NANOS_PER_MILLI, result.file(),
+							result.error());
+				}
+			}
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while checking files", except);
+		} catch (final ExecutionException except) {
+			// validate(Path) catches everything a file can throw at it.
+			throw new IllegalStateException("Unexpected error checking files",
+					except.getCause());
+		}
+		final double wallSeconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+		out.printf("%d files (%d dances, %.1f MiB) checked, %d failed, in %.2f s " +
+				           "on %d threads%n", files.size(), totalDances,
+				totalBytes / BYTES_PER_MEBIBYTE, failures, wallSeconds, threads);
+		if (wallSeconds > 0) {
+			out.printf("%.1f files/s, %.2f MiB/s; %.2f s spent reading and parsing%n",
+					files.size() / wallSeconds,
+					totalBytes / BYTES_PER_MEBIBYTE / wallSeconds,
+					totalNanos / NANOS_PER_SECOND);
+		}
+		return failures == 0;
+	}
+
+	private static void usage() {
+		System.err.println("Usage: BatchValidator [--threads=N] path...");
+	}
+
+	public static void main(final String... args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		final List<Path> paths = new ArrayList<>(args.length);
+		for (final String arg : args) {
+			if (arg.startsWith(THREADS_OPTION)) {
+				try {
+					threads = Integer.parseInt(arg.substring(THREADS_OPTION.length()));
+				} catch (final NumberFormatException except) {
+					threads = 0;
+				}
+				if (threads < 1) {
+					usage();
+					System.exit(2);
+					return;
+				}
+			} else {
+				paths.add(Paths.get(arg));
+			}
+		}
+		if (paths.isEmpty()) {
+			usage();
+			System.exit(2);
+			return;
+		}
+		try {
+			final BatchValidator validator = new BatchValidator(System.out, threads);
+			System.exit(validator.validate(paths) ? 0 : 1);
+		} catch (final IOException except) {
+			LOGGER.log(Level.SEVERE, "Error searching for LaTeX files", except);
+			System.exit(2);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BatchValidator using %d threads".formatted(threads);
+	}
+}
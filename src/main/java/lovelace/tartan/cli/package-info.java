@@ -0,0 +1,10 @@
+/**
+ * Command-line tools that work with LaTeX programs without the GUI, and so without
+ * needing a display.
+ *
+ * @author Jonathan Lovelace
+ */
+@NullMarked
+package lovelace.tartan.cli;
+
+import org.jspecify.annotations.NullMarked;
@@ -0,0 +1,31 @@
+package lovelace.tartan.db;
+
+/**
+ * A snapshot of the counters of a cache.
+ *
+ * @param hits       How many lookups found what they were looking for in the cache.
+ * @param misses     How many lookups had to go to the database.
+ * @param evictions  How many entries have been dropped to keep the cache within its
+ *                   bound.
+ * @param entries    How many entries the cache currently holds.
+ * @param weight     The total size of the entries the cache currently holds.
+ * @param capacity   The bound on that total size.
+ * @author Jonathan Lovelace
+ */
+public record CacheStatistics(long hits, long misses, long evictions, int entries,
+                              long weight, long capacity) {
+	/**
+	 * @return the proportion of lookups that were hits, or 0 if there have been none
+	 */
+	public double hitRate() {
+		final long lookups = hits + misses;
+		return (lookups == 0) ? 0.0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "%d hits, %d misses (%.1f%%), %d evictions; %d entries, %d of %d"
+				       .formatted(hits, misses, hitRate() * 100, evictions, entries,
+						       weight, capacity);
+	}
+}
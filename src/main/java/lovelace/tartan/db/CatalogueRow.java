@@ -0,0 +1,108 @@
+package lovelace.tartan.db;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A view of one row of a {@link DanceCatalogue}. This holds nothing but the catalogue
+ * and the row's position in it, so creating one is cheap. It is equal to any other
+ * {@link DanceRow}, including a {@link DanceRowImpl}, with the same values.
+ *
+ * @author Jonathan Lovelace
+ */
+final class CatalogueRow implements DanceRow {
+	private final DanceCatalogue catalogue;
+	private final int ordinal;
+
+	CatalogueRow(final DanceCatalogue catalogue, final int ordinal) {
+		this.catalogue = catalogue;
+		this.ordinal = ordinal;
+	}
+
+	/**
+	 * @return this row's position in the given catalogue, or -1 if it is from another
+	 */
+	int ordinalIn(final DanceCatalogue other) {
+		return (other == catalogue) ? ordinal : -1;
+	}
+
+	@Override
+	public int id() {
+		return catalogue.id(ordinal);
+	}
+
+	@Override
+	public String name() {
+		return catalogue.name(ordinal);
+	}
+
+	@Override
+	public int length() {
+		return catalogue.length(ordinal);
+	}
+
+	@Override
+	public DanceFormation shape() {
+		return catalogue.shape(ordinal);
+	}
+
+	@Override
+	public DanceType type() {
+		return catalogue.type(ordinal);
+	}
+
+	@Override
+	public int couples() {
+		return catalogue.couples(ordinal);
+	}
+
+	@Override
+	public String source() {
+		return catalogue.source(ordinal);
+	}
+
+	@Override
+	public List<String> sources() {
+		return catalogue.sources(ordinal);
+	}
+
+	@Override
+	public DanceProgression progression() {
+		return catalogue.progression(ordinal);
+	}
+
+	@Override
+	public String toString() {
+		final String retval = "%s is a %d-bar %s for %d couples in a %s, from \"%s\""
+				.formatted(name(), length(), type().name(), couples(), shape().name(),
+						source());
+		final int others = catalogue.sourceCount(ordinal) - 1;
+		if (others == 0) {
+			return retval + ".";
+		} else {
+			return "%s and %d more.".formatted(retval, others);
+		}
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj instanceof final CatalogueRow row && row.catalogue == catalogue) {
+			return row.ordinal == ordinal;
+		} else if (obj instanceof final DanceRow row) {
+			//noinspection OverlyComplexBooleanExpression
+			return id() == row.id() && name().equals(row.name()) &&
+				length() == row.length() && shape().equals(row.shape()) &&
+				type().equals(row.type()) && couples() == row.couples() &&
+				sources().equals(row.sources()) &&
+				progression().equals(row.progression());
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(id(), name(), length(), shape(), type(), couples(),
+				source(), progression());
+	}
+}
@@ -0,0 +1,286 @@
+package lovelace.tartan.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A binary snapshot of the {@link DanceCatalogue} read from a database file, stored
+ * next to that file, so that later sessions can map it into memory instead of
+ * querying the database. The snapshot records the size, modification time, and
+ * checksum of the database file it was made from, and is ignored if any of those no
+ * longer match.
+ * <p>
+ * Computing the checksum means reading the whole database, so it is done only when
+ * needed: if a snapshot records the database's current size and modification time,
+ * the checksum it records is trusted, as build tools trust a file whose size and time
+ * are unchanged. Only when no snapshot matches them is the database read.
+ * <p>
+ * The snapshot's file name includes the database's checksum, so a snapshot of a
+ * changed database is written under a new name rather than over the old one. On some
+ * platforms a file that is mapped into memory, as the old snapshot may still be by
+ * this or another session, cannot be replaced or deleted. Old snapshots are deleted
+ * when a new one is written, if they can be. Other data derived from the database can
+ * be kept in files named the same way; see {@link #derivedFile}.
+ *
+ * @author Jonathan Lovelace
+ */
+final class CatalogueSnapshot {
+	private static final Logger LOGGER =
+			Logger.getLogger(CatalogueSnapshot.class.getName());
+
+	/**
+	 * The bytes "TCAT", marking a file as a catalogue snapshot.
+	 */
+	private static final int MAGIC = 0x54434154;
+
+	/**
+	 * The version of the snapshot format, to be incremented whenever it changes.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The size of the header: magic number, version, and the database's size,
+	 * modification time, and checksum.
+	 */
+	private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 3;
+
+	/**
+	 * The largest region of a file we map at once while computing its checksum.
+	 */
+	private static final long CHECKSUM_CHUNK = 1 << 28;
+
+	/**
+	 * The suffix of the names of snapshot files.
+	 */
+	private static final String SUFFIX = ".catalogue";
+
+	/**
+	 * The database file.
+	 */
+	private final Path database;
+
+	/**
+	 * The snapshot file.
+	 */
+	private final Path path;
+
+	/**
+	 * The size of the database file, in bytes.
+	 */
+	private final long size;
+
+	/**
+	 * The modification time of the database file, in milliseconds since the epoch.
+	 */
+	private final long modified;
+
+	/**
+	 * The CRC-32C of the contents of the database file.
+	 */
+	private final long checksum;
+
+	private CatalogueSnapshot(final Path database, final long size, final long modified,
+	                          final long checksum) {
+		this.database = database;
+		this.size = size;
+		this.modified = modified;
+		this.checksum = checksum;
+		path = derivedFile(SUFFIX);
+	}
+
+	/**
+	 * @param suffix the suffix of the file name, such as {@code ".catalogue"}
+	 * @return a file next to the database for data derived from this version of it,
+	 * named like the snapshot but with the given suffix
+	 */
+	Path derivedFile(final String suffix) {
+		return database.resolveSibling("%s.%08x%s".formatted(database.getFileName(),
+				checksum, suffix));
+	}
+
+	private static long checksum(final Path file, final long size) throws IOException {
+		final CRC32C crc = new CRC32C();
+		try (final FileChannel channel =
+				     FileChannel.open(file, StandardOpenOption.READ)) {
+			for (long start = 0; start < size; start += CHECKSUM_CHUNK) {
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(CHECKSUM_CHUNK, size - start)));
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Find the checksum recorded by a snapshot of the given database that was made when
+	 * it had the given size and modification time.
+	 *
+	 * @return the checksum, or null if there is no such snapshot
+	 */
+	private static @Nullable Long recordedChecksum(final Path database, final long size,
+	                                               final long modified) {
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(
+				database.toAbsolutePath().getParent(),
+				file -> isDerived(database, file, SUFFIX))) {
+			for (final Path file : stream) {
+				// Only the header is read, not the rest of the snapshot.
+				try (final DataInputStream in = new DataInputStream(
+						new BufferedInputStream(Files.newInputStream(file),
+								HEADER_SIZE))) {
+					if (in.readInt() == MAGIC && in.readInt() == VERSION &&
+							    in.readLong() == size && in.readLong() == modified) {
+						return in.readLong();
+					}
+				} catch (final IOException except) {
+					LOGGER.log(Level.FINE, "Couldn't read snapshot " + file, except);
+				}
+			}
+		} catch (final IOException except) {
+			LOGGER.log(Level.FINE, "Couldn't look for catalogue snapshots", except);
+		}
+		return null;
+	}
+
+	/**
+	 * Describe the snapshot for the given database file in its current state. Unless an
+	 * existing snapshot was made from a database of the same size and modification
+	 * time, this reads the whole database file to compute its checksum, so should be
+	 * done only once the caller has finished changing it.
+	 *
+	 * @param database the database file
+	 * @throws IOException if the database file can't be read
+	 */
+	static CatalogueSnapshot forDatabase(final Path database) throws IOException {
+		final long size = Files.size(database);
+		final long modified = Files.getLastModifiedTime(database).toMillis();
+		final @Nullable Long recorded = recordedChecksum(database, size, modified);
+		return new CatalogueSnapshot(database, size, modified,
+				(recorded == null) ? checksum(database, size) : recorded);
+	}
+
+	/**
+	 * Read the snapshot, if there is one matching the database.
+	 *
+	 * @return the catalogue it contains, or null if there is no snapshot or it is stale
+	 * or unreadable
+	 */
+	@Nullable DanceCatalogue read() {
+		try (final FileChannel channel =
+				     FileChannel.open(path, StandardOpenOption.READ)) {
+			final MappedByteBuffer buffer =
+					channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				LOGGER.fine("Catalogue snapshot is in an unknown format");
+				return null;
+			} else if (buffer.getLong() != size || buffer.getLong() != modified ||
+					           buffer.getLong() != checksum) {
+				LOGGER.fine("Catalogue snapshot is out of date");
+				return null;
+			}
+			final DanceCatalogue retval = DanceCatalogue.readFrom(buffer);
+			if (buffer.hasRemaining()) {
+				LOGGER.warning("Catalogue snapshot has trailing data");
+				return null;
+			}
+			return retval;
+		} catch (final NoSuchFileException except) {
+			LOGGER.fine("No catalogue snapshot yet");
+			return null;
+		} catch (final IOException | BufferUnderflowException | IllegalArgumentException |
+		               NegativeArraySizeException except) {
+			LOGGER.log(Level.WARNING, "Catalogue snapshot is unreadable", except);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the snapshot. To avoid leaving a partial snapshot that a later session
+	 * might read, it is written to a temporary file that is then moved into place.
+	 * Snapshots of earlier versions of the database are then deleted, if they can be.
+	 *
+	 * @param catalogue the catalogue read from the database
+	 */
+	void write(final DanceCatalogue catalogue) throws IOException {
+		final Path temp = Files.createTempFile(path.toAbsolutePath().getParent(),
+				path.getFileName().toString(), ".tmp");
+		try {
+			try (final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(size);
+				out.writeLong(modified);
+				out.writeLong(checksum);
+				catalogue.writeTo(out);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		deleteStale(SUFFIX);
+	}
+
+	/**
+	 * @return whether the given file was derived from the given database, whether from
+	 * its current version or not: its name is the database's, optionally followed by a
+	 * checksum, followed by the given suffix
+	 */
+	private static boolean isDerived(final Path database, final Path file,
+	                                 final String suffix) {
+		final String name = file.getFileName().toString();
+		final String prefix = database.getFileName().toString();
+		if (!name.startsWith(prefix) || !name.endsWith(suffix) ||
+				    name.length() < prefix.length() + suffix.length()) {
+			return false;
+		}
+		final String middle =
+				name.substring(prefix.length(), name.length() - suffix.length());
+		return middle.isEmpty() || middle.matches("\\.\\p{XDigit}{8}");
+	}
+
+	/**
+	 * Delete any files with the given suffix derived from other versions of the
+	 * database. One that is in use by another session may not be deletable yet; it
+	 * will be tried again next time.
+	 */
+	void deleteStale(final String suffix) {
+		final Path current = derivedFile(suffix);
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(
+				current.toAbsolutePath().getParent(),
+				file -> isDerived(database, file, suffix))) {
+			for (final Path file : stream) {
+				if (!file.getFileName().equals(current.getFileName())) {
+					try {
+						Files.deleteIfExists(file);
+					} catch (final IOException except) {
+						LOGGER.log(Level.FINE, "Couldn't delete stale file " + file,
+								except);
+					}
+				}
+			}
+		} catch (final IOException except) {
+			LOGGER.log(Level.FINE, "Couldn't look for stale files", except);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CatalogueSnapshot at " + path;
+	}
+}
@@ -0,0 +1,88 @@
+package lovelace.tartan.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A least-recently-used cache of crib texts, keyed by dance ID, bounded by the total
+ * number of characters it holds rather than by the number of cribs. Its methods are
+ * synchronized, so it may be shared between threads.
+ *
+ * @author Jonathan Lovelace
+ */
+final class CribCache {
+	/**
+	 * The cribs, in order from least to most recently used.
+	 */
+	private final LinkedHashMap<Integer, String> cribs =
+			new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * The maximum total length of the cribs we hold.
+	 */
+	private final long capacity;
+	/**
+	 * The total length of the cribs we hold.
+	 */
+	private long weight = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param capacity the maximum total number of characters to hold
+	 */
+	CribCache(final long capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative");
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the crib for the given dance, or null if we don't have it
+	 */
+	synchronized @Nullable String get(final int id) {
+		final String retval = cribs.get(id);
+		if (retval == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return retval;
+	}
+
+	/**
+	 * Add a crib to the cache, evicting the least recently used cribs as needed to stay
+	 * within our capacity. A crib too large to ever fit is not cached.
+	 */
+	synchronized void put(final int id, final String crib) {
+		if (crib.length() > capacity) {
+			return;
+		}
+		final String previous = cribs.put(id, crib);
+		if (previous != null) {
+			weight -= previous.length();
+		}
+		weight += crib.length();
+		final Iterator<Map.Entry<Integer, String>> iterator =
+				cribs.entrySet().iterator();
+		while (weight > capacity && iterator.hasNext()) {
+			final Map.Entry<Integer, String> eldest = iterator.next();
+			iterator.remove();
+			weight -= eldest.getValue().length();
+			evictions++;
+		}
+	}
+
+	synchronized CacheStatistics statistics() {
+		return new CacheStatistics(hits, misses, evictions, cribs.size(), weight,
+				capacity);
+	}
+
+	@Override
+	public String toString() {
+		return "CribCache: " + statistics();
+	}
+}
@@ -0,0 +1,587 @@
+package lovelace.tartan.db;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The dances in the database, stored by column rather than as one object per dance.
+ * Numeric attributes are kept in parallel {@code int} arrays; formations, types,
+ * progressions, and publication names are each stored once in a dictionary, with
+ * each dance holding only its index into that dictionary. A dance published in more
+ * than one place is stored once, with the indexes of all its publications. As a
+ * {@link List}, this hands out lightweight {@link DanceRow} views of its rows; the
+ * position of a row in the list is its "ordinal".
+ *
+ * @author Jonathan Lovelace
+ */
+final class DanceCatalogue extends AbstractList<DanceRow> implements RandomAccess {
+	private final int[] ids;
+	private final String[] names;
+	private final int[] lengths;
+	private final int[] couples;
+	/**
+	 * Indexes into {@link #shapeDictionary}.
+	 */
+	private final int[] shapes;
+	/**
+	 * Indexes into {@link #typeDictionary}.
+	 */
+	private final int[] types;
+	/**
+	 * Indexes into {@link #progressionDictionary}.
+	 */
+	private final int[] progressions;
+	/**
+	 * For each dance, where its publications start in {@link #sources}, followed by the
+	 * length of that array.
+	 */
+	private final int[] sourceOffsets;
+	/**
+	 * Indexes into {@link #sourceDictionary}: the publications of each dance in turn.
+	 */
+	private final int[] sources;
+	private final DanceFormation[] shapeDictionary;
+	private final DanceType[] typeDictionary;
+	private final DanceProgression[] progressionDictionary;
+	private final String[] sourceDictionary;
+
+	@SuppressWarnings("ConstructorWithTooManyParameters") // only called internally
+	private DanceCatalogue(final int[] ids, final String[] names, final int[] lengths,
+	                       final int[] couples, final int[] shapes, final int[] types,
+	                       final int[] progressions, final int[] sourceOffsets,
+	                       final int[] sources,
+	                       final DanceFormation[] shapeDictionary,
+	                       final DanceType[] typeDictionary,
+	                       final DanceProgression[] progressionDictionary,
+	                       final String[] sourceDictionary) {
+		this.ids = ids;
+		this.names = names;
+		this.lengths = lengths;
+		this.couples = couples;
+		this.shapes = shapes;
+		this.types = types;
+		this.progressions = progressions;
+		this.sourceOffsets = sourceOffsets;
+		this.sources = sources;
+		this.shapeDictionary = shapeDictionary;
+		this.typeDictionary = typeDictionary;
+		this.progressionDictionary = progressionDictionary;
+		this.sourceDictionary = sourceDictionary;
+	}
+
+	@Override
+	public DanceRow get(final int ordinal) {
+		if (ordinal < 0 || ordinal >= ids.length) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+		return new CatalogueRow(this, ordinal);
+	}
+
+	@Override
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @return the position of the given row in this catalogue, or -1 if it did not come
+	 * from this catalogue
+	 */
+	int ordinalOf(final DanceRow row) {
+		return (row instanceof final CatalogueRow view) ? view.ordinalIn(this) : -1;
+	}
+
+	int id(final int ordinal) {
+		return ids[ordinal];
+	}
+
+	String name(final int ordinal) {
+		return names[ordinal];
+	}
+
+	int length(final int ordinal) {
+		return lengths[ordinal];
+	}
+
+	int couples(final int ordinal) {
+		return couples[ordinal];
+	}
+
+	DanceFormation shape(final int ordinal) {
+		return shapeDictionary[shapes[ordinal]];
+	}
+
+	DanceType type(final int ordinal) {
+		return typeDictionary[types[ordinal]];
+	}
+
+	DanceProgression progression(final int ordinal) {
+		return progressionDictionary[progressions[ordinal]];
+	}
+
+	/**
+	 * @return the first of the given dance's publications
+	 */
+	String source(final int ordinal) {
+		return sourceDictionary[sources[sourceOffsets[ordinal]]];
+	}
+
+	/**
+	 * @return all the given dance's publications
+	 */
+	List<String> sources(final int ordinal) {
+		return Arrays.stream(sources, sourceOffsets[ordinal], sourceOffsets[ordinal + 1])
+				       .mapToObj(code -> sourceDictionary[code]).toList();
+	}
+
+	/**
+	 * @return how many publications the given dance has appeared in
+	 */
+	int sourceCount(final int ordinal) {
+		return sourceOffsets[ordinal + 1] - sourceOffsets[ordinal];
+	}
+
+	/**
+	 * @return for each entry in the dictionary, whether it matches the given predicate
+	 */
+	private static <T> boolean[] matching(final T[] dictionary,
+	                                      final Predicate<? super T> predicate) {
+		final boolean[] retval = new boolean[dictionary.length];
+		for (int i = 0; i < dictionary.length; i++) {
+			retval[i] = predicate.test(dictionary[i]);
+		}
+		return retval;
+	}
+
+	/**
+	 * @return a filter on ordinals that matches dances whose formation matches the given
+	 * predicate. The predicate is evaluated once per distinct formation, not per dance.
+	 */
+	IntPredicate shapeFilter(final Predicate<? super DanceFormation> predicate) {
+		final boolean[] matches = matching(shapeDictionary, predicate);
+		return ordinal -> matches[shapes[ordinal]];
+	}
+
+	/**
+	 * @return a filter on ordinals that matches dances whose type matches the given
+	 * predicate. The predicate is evaluated once per distinct type, not per dance.
+	 */
+	IntPredicate typeFilter(final Predicate<? super DanceType> predicate) {
+		final boolean[] matches = matching(typeDictionary, predicate);
+		return ordinal -> matches[types[ordinal]];
+	}
+
+	/**
+	 * @return a filter on ordinals that matches dances whose progression matches the
+	 * given predicate. The predicate is evaluated once per distinct progression, not per
+	 * dance.
+	 */
+	IntPredicate progressionFilter(final Predicate<? super DanceProgression> predicate) {
+		final boolean[] matches = matching(progressionDictionary, predicate);
+		return ordinal -> matches[progressions[ordinal]];
+	}
+
+	/**
+	 * @return a filter on ordinals that matches dances with any source matching the
+	 * given predicate. The predicate is evaluated once per distinct source, not per
+	 * dance.
+	 */
+	IntPredicate sourceFilter(final Predicate<? super String> predicate) {
+		final boolean[] matches = matching(sourceDictionary, predicate);
+		return ordinal -> {
+			for (int i = sourceOffsets[ordinal]; i < sourceOffsets[ordinal + 1]; i++) {
+				if (matches[sources[i]]) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	/**
+	 * @return a filter on ordinals that matches dances whose length in bars matches the
+	 * given predicate
+	 */
+	IntPredicate lengthFilter(final IntPredicate predicate) {
+		return ordinal -> predicate.test(lengths[ordinal]);
+	}
+
+	/**
+	 * @return a filter on ordinals that matches dances whose number of couples matches
+	 * the given predicate
+	 */
+	IntPredicate couplesFilter(final IntPredicate predicate) {
+		return ordinal -> predicate.test(couples[ordinal]);
+	}
+
+	/**
+	 * @return the ordinals of the dances matching the given filter, in ascending order
+	 */
+	int[] filter(final IntPredicate filter) {
+		final int[] retval = new int[ids.length];
+		int count = 0;
+		for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+			if (filter.test(ordinal)) {
+				retval[count] = ordinal;
+				count++;
+			}
+		}
+		return Arrays.copyOf(retval, count);
+	}
+
+	@Override
+	public String toString() {
+		return "DanceCatalogue of %d dances from %d sources".formatted(ids.length,
+				sourceDictionary.length);
+	}
+
+	private static void writeString(final DataOutput out, final @Nullable String string)
+			throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		} else {
+			final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Read a count of items, checking that the buffer has room for that many, so that
+	 * a corrupt count cannot make us allocate more than the data could hold.
+	 *
+	 * @param minimumBytes the fewest bytes each item can take up
+	 * @throws IllegalArgumentException if the count is negative or too large
+	 */
+	private static int readCount(final ByteBuffer buffer, final int minimumBytes) {
+		final int count = buffer.getInt();
+		checkRemaining(buffer, count, minimumBytes);
+		return count;
+	}
+
+	/**
+	 * Check that the buffer has room for the given number of items.
+	 *
+	 * @param minimumBytes the fewest bytes each item can take up
+	 * @throws IllegalArgumentException if the count is negative or too large
+	 */
+	private static void checkRemaining(final ByteBuffer buffer, final int count,
+	                                   final int minimumBytes) {
+		if (count < 0 || (long) count * minimumBytes > buffer.remaining()) {
+			throw new IllegalArgumentException(
+					"Count %d is more than the remaining %d bytes could hold".formatted(
+							count, buffer.remaining()));
+		}
+	}
+
+	private static @Nullable String readString(final ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length == -1) {
+			return null;
+		}
+		checkRemaining(buffer, length, 1);
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeColumn(final DataOutput out, final int[] column)
+			throws IOException {
+		for (final int value : column) {
+			out.writeInt(value);
+		}
+	}
+
+	private static int[] readColumn(final ByteBuffer buffer, final int size) {
+		checkRemaining(buffer, size, Integer.BYTES);
+		final int[] retval = new int[size];
+		buffer.asIntBuffer().get(retval);
+		buffer.position(buffer.position() + Integer.BYTES * size);
+		return retval;
+	}
+
+	/**
+	 * Read a column of indexes into a dictionary, checking that each is in range.
+	 */
+	private static int[] readCodes(final ByteBuffer buffer, final int size,
+	                               final int dictionarySize) {
+		final int[] retval = readColumn(buffer, size);
+		for (final int code : retval) {
+			if (code < 0 || code >= dictionarySize) {
+				throw new IllegalArgumentException("Dictionary index out of range");
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Write this catalogue in the binary form {@link #readFrom} reads. Names are written
+	 * as a dictionary, so that names shared between rows stay shared when read back.
+	 */
+	void writeTo(final DataOutput out) throws IOException {
+		final Map<String, Integer> nameDictionary = new HashMap<>();
+		final int[] nameCodes = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			nameCodes[i] = Builder.encode(nameDictionary, names[i]);
+		}
+		out.writeInt(ids.length);
+		out.writeInt(shapeDictionary.length);
+		for (final DanceFormation shape : shapeDictionary) {
+			out.writeInt(shape.id());
+			writeString(out, shape.name());
+			writeString(out, shape.abbreviation());
+		}
+		out.writeInt(typeDictionary.length);
+		for (final DanceType type : typeDictionary) {
+			out.writeInt(type.id());
+			writeString(out, type.name());
+			writeString(out, type.abbreviation());
+		}
+		out.writeInt(progressionDictionary.length);
+		for (final DanceProgression progression : progressionDictionary) {
+			out.writeInt(progression.id());
+			writeString(out, progression.name());
+		}
+		out.writeInt(sourceDictionary.length);
+		for (final String source : sourceDictionary) {
+			writeString(out, source);
+		}
+		final String[] distinctNames =
+				Builder.decode(nameDictionary, new String[nameDictionary.size()]);
+		out.writeInt(distinctNames.length);
+		for (final String name : distinctNames) {
+			writeString(out, name);
+		}
+		writeColumn(out, ids);
+		writeColumn(out, nameCodes);
+		writeColumn(out, lengths);
+		writeColumn(out, couples);
+		writeColumn(out, shapes);
+		writeColumn(out, types);
+		writeColumn(out, progressions);
+		writeColumn(out, sourceOffsets);
+		writeColumn(out, sources);
+	}
+
+	/**
+	 * Read a catalogue written by {@link #writeTo}, leaving the buffer positioned just
+	 * after it. Every count and length is checked against the data remaining before
+	 * anything is allocated for it.
+	 *
+	 * @throws IllegalArgumentException        if the data is inconsistent
+	 * @throws java.nio.BufferUnderflowException if the data is truncated
+	 */
+	@SuppressWarnings("ObjectAllocationInLoop")
+	static DanceCatalogue readFrom(final ByteBuffer buffer) {
+		// Each dance takes up at least its entry in every column.
+		final int size = readCount(buffer, Integer.BYTES * 9);
+		// Each dictionary entry takes up at least its ID and its strings' lengths.
+		final DanceFormation[] shapeDictionary =
+				new DanceFormation[readCount(buffer, Integer.BYTES * 3)];
+		for (int i = 0; i < shapeDictionary.length; i++) {
+			shapeDictionary[i] = new DanceFormation(buffer.getInt(), readString(buffer),
+					readString(buffer));
+		}
+		final DanceType[] typeDictionary =
+				new DanceType[readCount(buffer, Integer.BYTES * 3)];
+		for (int i = 0; i < typeDictionary.length; i++) {
+			typeDictionary[i] = new DanceTypeImpl(buffer.getInt(), readString(buffer),
+					readString(buffer));
+		}
+		final DanceProgression[] progressionDictionary =
+				new DanceProgression[readCount(buffer, Integer.BYTES * 2)];
+		for (int i = 0; i < progressionDictionary.length; i++) {
+			progressionDictionary[i] = new DanceProgressionImpl(buffer.getInt(),
+					readString(buffer));
+		}
+		final String[] sourceDictionary = new String[readCount(buffer, Integer.BYTES)];
+		for (int i = 0; i < sourceDictionary.length; i++) {
+			sourceDictionary[i] = readString(buffer);
+		}
+		final String[] nameDictionary = new String[readCount(buffer, Integer.BYTES)];
+		for (int i = 0; i < nameDictionary.length; i++) {
+			nameDictionary[i] = readString(buffer);
+		}
+		final int[] ids = readColumn(buffer, size);
+		final int[] nameCodes = readCodes(buffer, size, nameDictionary.length);
+		final String[] names = new String[size];
+		for (int i = 0; i < size; i++) {
+			names[i] = nameDictionary[nameCodes[i]];
+		}
+		final int[] lengths = readColumn(buffer, size);
+		final int[] couples = readColumn(buffer, size);
+		final int[] shapes = readCodes(buffer, size, shapeDictionary.length);
+		final int[] types = readCodes(buffer, size, typeDictionary.length);
+		final int[] progressions = readCodes(buffer, size, progressionDictionary.length);
+		final int[] sourceOffsets = readColumn(buffer, size + 1);
+		if (sourceOffsets[0] != 0) {
+			throw new IllegalArgumentException("Publication offsets don't start at 0");
+		}
+		for (int i = 0; i < size; i++) {
+			if (sourceOffsets[i + 1] <= sourceOffsets[i]) {
+				throw new IllegalArgumentException("Dance without publications");
+			}
+		}
+		return new DanceCatalogue(ids, names, lengths, couples, shapes, types,
+				progressions, sourceOffsets,
+				readCodes(buffer, sourceOffsets[size], sourceDictionary.length),
+				shapeDictionary, typeDictionary, progressionDictionary, sourceDictionary);
+	}
+
+	/**
+	 * A builder to accumulate the rows of a catalogue. Rows for a dance already added
+	 * only add their publication to it.
+	 */
+	static final class Builder {
+		private int size = 0;
+		private int[] ids = new int[256];
+		private String[] names = new String[256];
+		private int[] lengths = new int[256];
+		private int[] couples = new int[256];
+		private int[] shapes = new int[256];
+		private int[] types = new int[256];
+		private int[] progressions = new int[256];
+		/**
+		 * The position of each dance ID in the arrays above.
+		 */
+		private final Map<Integer, Integer> ordinals = new HashMap<>();
+		/**
+		 * The publications added, as the ordinal of the dance in each, in parallel with
+		 * {@link #sourceCodes}.
+		 */
+		private final PostingBuilder sourceOwners = new PostingBuilder();
+		/**
+		 * The publications added, as indexes into {@link #sourceDictionary}.
+		 */
+		private final PostingBuilder sourceCodes = new PostingBuilder();
+		private final Map<DanceFormation, Integer> shapeDictionary = new HashMap<>();
+		private final Map<DanceType, Integer> typeDictionary = new HashMap<>();
+		private final Map<DanceProgression, Integer> progressionDictionary =
+				new HashMap<>();
+		private final Map<String, Integer> sourceDictionary = new HashMap<>();
+		/**
+		 * Names we have already seen, so a dance listed once per publication shares a
+		 * single String.
+		 */
+		private final Map<String, String> canonicalNames = new HashMap<>();
+
+		private static <T> int encode(final Map<T, Integer> dictionary, final T value) {
+			return dictionary.computeIfAbsent(value, ignored -> dictionary.size());
+		}
+
+		private static <T> T[] decode(final Map<T, Integer> dictionary,
+		                              final T[] array) {
+			for (final Map.Entry<T, Integer> entry : dictionary.entrySet()) {
+				array[entry.getValue()] = entry.getKey();
+			}
+			return array;
+		}
+
+		private void grow() {
+			final int capacity = ids.length * 2;
+			ids = Arrays.copyOf(ids, capacity);
+			names = Arrays.copyOf(names, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			couples = Arrays.copyOf(couples, capacity);
+			shapes = Arrays.copyOf(shapes, capacity);
+			types = Arrays.copyOf(types, capacity);
+			progressions = Arrays.copyOf(progressions, capacity);
+		}
+
+		@SuppressWarnings("MethodWithTooManyParameters")
+		Builder add(final int id, final String name, final int length,
+		            final DanceFormation shape, final DanceType type,
+		            final int couplesCount, final String source,
+		            final DanceProgression progression) {
+			final Integer existing = ordinals.get(id);
+			if (existing != null) {
+				sourceOwners.add(existing);
+				sourceCodes.add(encode(sourceDictionary, source));
+				return this;
+			}
+			if (size == ids.length) {
+				grow();
+			}
+			ordinals.put(id, size);
+			ids[size] = id;
+			names[size] = canonicalNames.computeIfAbsent(name, str -> str);
+			lengths[size] = length;
+			couples[size] = couplesCount;
+			shapes[size] = encode(shapeDictionary, shape);
+			types[size] = encode(typeDictionary, type);
+			progressions[size] = encode(progressionDictionary, progression);
+			sourceOwners.add(size);
+			sourceCodes.add(encode(sourceDictionary, source));
+			size++;
+			return this;
+		}
+
+		private static boolean contains(final int[] array, final int from, final int to,
+		                                final int value) {
+			for (int i = from; i < to; i++) {
+				if (array[i] == value) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		DanceCatalogue build() {
+			// Group the publications by dance, keeping them in the order they were
+			// added, and dropping any listed twice for the same dance.
+			final int[] owners = sourceOwners.toArray();
+			final int[] codes = sourceCodes.toArray();
+			final int[] offsets = new int[size + 1];
+			for (final int owner : owners) {
+				offsets[owner + 1]++;
+			}
+			for (int i = 0; i < size; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			final int[] filled = Arrays.copyOf(offsets, size);
+			final int[] grouped = new int[codes.length];
+			for (int i = 0; i < owners.length; i++) {
+				grouped[filled[owners[i]]] = codes[i];
+				filled[owners[i]]++;
+			}
+			final int[] sourceOffsets = new int[size + 1];
+			final int[] sources = new int[codes.length];
+			int count = 0;
+			for (int ordinal = 0; ordinal < size; ordinal++) {
+				sourceOffsets[ordinal] = count;
+				for (int i = offsets[ordinal]; i < offsets[ordinal + 1]; i++) {
+					if (!contains(sources, sourceOffsets[ordinal], count, grouped[i])) {
+						sources[count] = grouped[i];
+						count++;
+					}
+				}
+			}
+			sourceOffsets[size] = count;
+			return new DanceCatalogue(Arrays.copyOf(ids, size),
+					Arrays.copyOf(names, size), Arrays.copyOf(lengths, size),
+					Arrays.copyOf(couples, size), Arrays.copyOf(shapes, size),
+					Arrays.copyOf(types, size), Arrays.copyOf(progressions, size),
+					sourceOffsets, Arrays.copyOf(sources, count),
+					decode(shapeDictionary, new DanceFormation[shapeDictionary.size()]),
+					decode(typeDictionary, new DanceType[typeDictionary.size()]),
+					decode(progressionDictionary,
+							new DanceProgression[progressionDictionary.size()]),
+					decode(sourceDictionary, new String[sourceDictionary.size()]));
+		}
+
+		@Override
+		public String toString() {
+			return "DanceCatalogue.Builder with %d dances".formatted(size);
+		}
+	}
+}
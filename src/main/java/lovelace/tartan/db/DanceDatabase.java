@@ -1,24 +1,41 @@
 package lovelace.tartan.db;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import org.jspecify.annotations.Nullable;
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteDataSource;
 
 /**
  * A connection to (a downloaded snapshot of) the dance database.
+ * <p>
+ * Any number of threads may use a database at once. The in-memory catalogue and
+ * indexes never change once loaded, so they need no locking; each query of the
+ * database file borrows one of a few read-only connections, each with its own prepared
+ * statements, so that a slow query on one thread (say, fetching cribs for a program)
+ * does not hold up searches on another.
  *
  * @author Jonathan Lovelace
  */
@@ -26,14 +43,110 @@ public class DanceDatabase implements AutoCloseable {
 
 	private static final Logger LOGGER = Logger.getLogger(DanceDatabase.class.getName());
 
-	private final Connection sql;
+	/**
+	 * How many read-only connections to the database file to open at most.
+	 */
+	private static final int MAX_READERS = 4;
 
-	private final List<DanceRow> dances;
+	/**
+	 * The read-only connections to the database file.
+	 */
+	private final ReaderPool readers;
 
-	private final PreparedStatement cribStatement;
+	private final DanceCatalogue dances;
+
+	@SuppressWarnings("SpellCheckingInspection")
+	private static final String CRIB_QUERY = """
+			SELECT text FROM dancecrib WHERE dance_id = ? \
+			ORDER BY format ASC LIMIT 1""";
+
+	/**
+	 * The suffix of the name of the file, next to the database file, that holds the
+	 * full-text index of a version of the database.
+	 */
+	private static final String FULL_TEXT_SUFFIX = ".fts";
+
+	private static final String FULL_TEXT_QUERY =
+			"SELECT rowid FROM fts.dance_fts WHERE dance_fts MATCH ?";
+
+	/**
+	 * How many dances' cribs to ask for in a single query.
+	 */
+	private static final int CRIB_CHUNK_SIZE = 256;
+
+	/**
+	 * The query for a full chunk of cribs.
+	 */
+	private static final String CRIB_CHUNK_QUERY = cribChunkQuery(CRIB_CHUNK_SIZE);
+
+	/**
+	 * The default bound on the total number of characters of crib text to cache.
+	 */
+	public static final long DEFAULT_CRIB_CACHE_CAPACITY = 1 << 20;
+
+	/**
+	 * Crib texts we have already fetched.
+	 */
+	private final CribCache cribCache;
+
+	/**
+	 * The position in {@link #dances} of the dance with each ID.
+	 */
+	private final Map<Integer, Integer> ordinalsById;
+
+	/**
+	 * How dance names and search terms are turned into search keys.
+	 */
+	private final SearchKeyNormalizer searchKeys;
+
+	/**
+	 * An index of the trigrams in the search keys of the names of {@link #dances}.
+	 */
+	private final TrigramIndex nameIndex;
+
+	/**
+	 * An index of the words in the search keys of the names of {@link #dances}, for
+	 * searches that tolerate misspellings.
+	 */
+	private final FuzzyIndex fuzzyIndex;
+
+	/**
+	 * Puts the best matches for a search term first.
+	 */
+	private final RelevanceRanker ranker;
+
+	/**
+	 * The dances with each value of each facet.
+	 */
+	private final FacetIndex facetIndex;
+
+	/**
+	 * The file holding the full-text index of dance names and publications, or null if
+	 * it could not be built (if, for example, this SQLite lacks FTS5).
+	 */
+	private final @Nullable Path fullTextFile;
+
+	/**
+	 * Whether {@link #fullTextFile} is for this session only, to be deleted when it
+	 * ends, because it could not be stored next to the database for later sessions.
+	 */
+	private final boolean fullTextTemporary;
+
+	/**
+	 * Whether the full-text index could be set up and every reader could open it.
+	 */
+	private volatile boolean fullTextAvailable;
 
 	public Collection<DanceRow> getDances() {
-		return Collections.unmodifiableList(dances);
+		return dances;
+	}
+
+	/**
+	 * @return the position of the given row in {@link #getDances()}, or -1 if it did not
+	 * come from this database
+	 */
+	public int ordinalOf(final DanceRow row) {
+		return dances.ordinalOf(row);
 	}
 
 	@FunctionalInterface
@@ -53,23 +166,9 @@ public class DanceDatabase implements AutoCloseable {
 		}
 	}
 
-	private static <T> List<T> resultsToList(final PreparedStatement statement,
-	                                         final ResultsFunction<T> reader)
-			throws SQLException {
-		try (final ResultSet results = statement.executeQuery()) {
-			final List<T> retval = new ArrayList<>(results.getFetchSize());
-			while (results.next()) {
-				retval.add(reader.apply(results));
-			}
-			return retval;
-		}
-	}
-
 	@SuppressWarnings("SpellCheckingInspection")
-	public DanceDatabase(final Path filename) throws SQLException {
-		final SQLiteDataSource ds = new SQLiteDataSource();
-		ds.setUrl("jdbc:sqlite:" + filename);
-		sql = ds.getConnection();
+	private static DanceCatalogue queryCatalogue(final Connection sql)
+			throws SQLException {
 		final Map<Integer, DanceType> typesMap =
 				resultsToMap(sql.prepareStatement(
 						"SELECT id, name, short_name FROM dancetype"),
@@ -86,18 +185,232 @@ public class DanceDatabase implements AutoCloseable {
 				resultsToMap(sql.prepareStatement("SELECT id, name FROM progression"),
 						results -> new DanceProgressionImpl(results.getInt("id"),
 								results.getString("name")));
-		dances = resultsToList(sql.prepareStatement("""
-						SELECT dance.id, dance.name, dance.barsperrepeat, \
-						dance.shape_id, dance.type_id, dance.couples_id, \
-						publication.name AS publicationName, dance.progression_id \
-						FROM dance \
-						JOIN dancepublicationsmap dpm ON dance.id = dpm.dance_id \
-						JOIN publication ON publication.id = dpm.publication_id"""),
-				results -> parseDance(results, shapesMap, typesMap, progressionsMap));
-		cribStatement = sql.prepareStatement(
-				"""
-						SELECT text FROM dancecrib WHERE dance_id = ? \
-						ORDER BY format ASC LIMIT 1""");
+		final DanceCatalogue.Builder builder = new DanceCatalogue.Builder();
+		try (final PreparedStatement statement = sql.prepareStatement("""
+				SELECT dance.id, dance.name, dance.barsperrepeat, \
+				dance.shape_id, dance.type_id, dance.couples_id, \
+				publication.name AS publicationName, dance.progression_id \
+				FROM dance \
+				JOIN dancepublicationsmap dpm ON dance.id = dpm.dance_id \
+				JOIN publication ON publication.id = dpm.publication_id""");
+		     final ResultSet results = statement.executeQuery()) {
+			while (results.next()) {
+				parseDance(results, shapesMap, typesMap, progressionsMap, builder);
+			}
+		}
+		return builder.build();
+	}
+
+	public DanceDatabase(final Path filename) throws SQLException {
+		this(filename, DEFAULT_CRIB_CACHE_CAPACITY);
+	}
+
+	/**
+	 * @param filename          the database file to open
+	 * @param cribCacheCapacity the bound on the total number of characters of crib text
+	 *                          to keep in memory once fetched
+	 */
+	public DanceDatabase(final Path filename, final long cribCacheCapacity)
+			throws SQLException {
+		this(filename, cribCacheCapacity, SearchKeyNormalizer.DEFAULT);
+	}
+
+	/**
+	 * @param filename          the database file to open
+	 * @param cribCacheCapacity the bound on the total number of characters of crib text
+	 *                          to keep in memory once fetched
+	 * @param searchKeys        how to normalize dance names and search terms for
+	 *                          substring searches
+	 */
+	@SuppressWarnings("SpellCheckingInspection")
+	public DanceDatabase(final Path filename, final long cribCacheCapacity,
+	                     final SearchKeyNormalizer searchKeys) throws SQLException {
+		cribCache = new CribCache(cribCacheCapacity);
+		this.searchKeys = searchKeys;
+		final SQLiteConfig config = new SQLiteConfig();
+		config.setReadOnly(true);
+		final SQLiteDataSource ds = new SQLiteDataSource(config);
+		ds.setUrl("jdbc:sqlite:" + filename);
+		@Nullable CatalogueSnapshot snapshot;
+		try {
+			snapshot = CatalogueSnapshot.forDatabase(filename);
+		} catch (final IOException except) {
+			LOGGER.log(Level.FINE, "Can't snapshot catalogue of this database", except);
+			snapshot = null;
+		}
+		try (final Connection setUp = ds.getConnection()) {
+			dances = loadCatalogue(setUp, snapshot);
+		}
+		final Path stored =
+				(snapshot == null) ? null : storeFullTextIndex(filename, snapshot);
+		if (stored == null) {
+			fullTextFile = temporaryFullTextIndex(filename);
+			fullTextTemporary = true;
+		} else {
+			fullTextFile = stored;
+			fullTextTemporary = false;
+		}
+		fullTextAvailable = fullTextFile != null;
+		readers = new ReaderPool("jdbc:sqlite:" + filename, MAX_READERS,
+				this::prepareReader);
+		ordinalsById = new HashMap<>(dances.size());
+		for (int ordinal = 0; ordinal < dances.size(); ordinal++) {
+			ordinalsById.put(dances.id(ordinal), ordinal);
+		}
+		final List<String> nameKeys = searchKeysOf(dances, searchKeys);
+		nameIndex = new TrigramIndex(nameKeys);
+		fuzzyIndex = new FuzzyIndex(nameKeys);
+		ranker = new RelevanceRanker(nameKeys, dances);
+		facetIndex = new FacetIndex(dances);
+	}
+
+	/**
+	 * Compute the search key for each dance's name. Many names appear once per
+	 * publication, so each distinct name is only normalized once.
+	 */
+	private static List<String> searchKeysOf(final DanceCatalogue dances,
+	                                         final SearchKeyNormalizer normalizer) {
+		final Map<String, String> computed = new HashMap<>();
+		final List<String> retval = new ArrayList<>(dances.size());
+		for (int i = 0; i < dances.size(); i++) {
+			retval.add(computed.computeIfAbsent(dances.name(i), normalizer::normalize));
+		}
+		return retval;
+	}
+
+	/**
+	 * Get the catalogue of dances from the snapshot of the database file, if there is
+	 * an up-to-date one, and otherwise from the database, saving a snapshot for next
+	 * time.
+	 */
+	private static DanceCatalogue loadCatalogue(final Connection sql,
+	                                            final @Nullable CatalogueSnapshot snapshot)
+			throws SQLException {
+		if (snapshot == null) {
+			return queryCatalogue(sql);
+		}
+		final DanceCatalogue cached = snapshot.read();
+		if (cached != null) {
+			return cached;
+		}
+		final DanceCatalogue retval = queryCatalogue(sql);
+		try {
+			snapshot.write(retval);
+		} catch (final IOException except) {
+			LOGGER.log(Level.INFO, "Couldn't save catalogue snapshot", except);
+		}
+		return retval;
+	}
+
+	/**
+	 * Build the full-text index of the given database in a new SQLite database. The
+	 * index is built in a single transaction, so if it is interrupted, the new file has
+	 * no index in it.
+	 *
+	 * @param database the database to index, which is only read
+	 * @param target   the (empty or nonexistent) file to build the index in
+	 */
+	@SuppressWarnings("SpellCheckingInspection")
+	private static void buildFullTextIndex(final Path database, final Path target)
+			throws SQLException {
+		final SQLiteDataSource ds = new SQLiteDataSource();
+		ds.setUrl("jdbc:sqlite:" + target);
+		try (final Connection sql = ds.getConnection();
+		     final PreparedStatement attach =
+				     sql.prepareStatement("ATTACH DATABASE ? AS source");
+		     final Statement statement = sql.createStatement()) {
+			attach.setString(1, database.toString());
+			attach.execute();
+			sql.setAutoCommit(false);
+			statement.executeUpdate("""
+					CREATE VIRTUAL TABLE main.dance_fts USING fts5(name, publications, \
+					tokenize = 'unicode61 remove_diacritics 2')""");
+			statement.executeUpdate("""
+					INSERT INTO main.dance_fts(rowid, name, publications) \
+					SELECT dance.id, dance.name, group_concat(publication.name, ' ; ') \
+					FROM source.dance \
+					LEFT JOIN source.dancepublicationsmap dpm \
+					ON dance.id = dpm.dance_id \
+					LEFT JOIN source.publication ON publication.id = dpm.publication_id \
+					GROUP BY dance.id""");
+			sql.commit();
+		}
+	}
+
+	/**
+	 * Store the full-text index of this version of the database in a file next to it,
+	 * unless an earlier session already has, so that this and later sessions can reuse
+	 * it. The database file itself is never changed. Since the file's name includes
+	 * the database's checksum, a changed database gets a new index, and indexes of
+	 * earlier versions are then deleted.
+	 *
+	 * @return the index file, or null if it could not be stored (for example, because
+	 * the directory is read-only)
+	 */
+	private static @Nullable Path storeFullTextIndex(final Path database,
+	                                                 final CatalogueSnapshot snapshot) {
+		final Path target = snapshot.derivedFile(FULL_TEXT_SUFFIX);
+		if (Files.isRegularFile(target)) {
+			return target;
+		}
+		try {
+			// Built under another name and moved into place, so that no session ever
+			// sees a partial index.
+			final Path temp = Files.createTempFile(target.toAbsolutePath().getParent(),
+					target.getFileName().toString(), ".tmp");
+			try {
+				buildFullTextIndex(database, temp);
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (final IOException | SQLException except) {
+			LOGGER.log(Level.FINE, "Couldn't store full-text index next to database",
+					except);
+			return null;
+		}
+		snapshot.deleteStale(FULL_TEXT_SUFFIX);
+		return target;
+	}
+
+	/**
+	 * Build the full-text index in a temporary file, for this session only.
+	 *
+	 * @return the index file, or null if the index could not be built
+	 */
+	private static @Nullable Path temporaryFullTextIndex(final Path database) {
+		try {
+			final Path temp = Files.createTempFile("dance-index", FULL_TEXT_SUFFIX);
+			try {
+				buildFullTextIndex(database, temp);
+			} catch (final SQLException except) {
+				Files.deleteIfExists(temp);
+				throw except;
+			}
+			return temp;
+		} catch (final IOException | SQLException except) {
+			LOGGER.log(Level.WARNING, "Full-text search is unavailable", except);
+			return null;
+		}
+	}
+
+	/**
+	 * Set up a newly opened reader by attaching the full-text index to it.
+	 */
+	private void prepareReader(final Connection sql) {
+		final Path index = fullTextFile;
+		if (index == null || !fullTextAvailable) {
+			return;
+		}
+		try (final PreparedStatement attach =
+				     sql.prepareStatement("ATTACH DATABASE ? AS fts")) {
+			attach.setString(1, index.toString());
+			attach.execute();
+		} catch (final SQLException except) {
+			fullTextAvailable = false;
+			LOGGER.log(Level.WARNING, "Full-text search is unavailable", except);
+		}
 	}
 
 	private static <T> T getFromMap(final Map<Integer, T> map, final int num,
@@ -113,10 +426,11 @@ public class DanceDatabase implements AutoCloseable {
 	}
 
 	@SuppressWarnings("SpellCheckingInspection")
-	private static DanceRowImpl parseDance(final ResultSet danceResults,
-	                                       final Map<Integer, DanceFormation> shapesMap,
-	                                       final Map<Integer, DanceType> typesMap,
-	                                       final Map<Integer, DanceProgression> progressionsMap)
+	private static void parseDance(final ResultSet danceResults,
+	                               final Map<Integer, DanceFormation> shapesMap,
+	                               final Map<Integer, DanceType> typesMap,
+	                               final Map<Integer, DanceProgression> progressionsMap,
+	                               final DanceCatalogue.Builder builder)
 			throws SQLException {
 		final int id = danceResults.getInt("id");
 		final String name = danceResults.getString("name");
@@ -147,27 +461,284 @@ public class DanceDatabase implements AutoCloseable {
 		final DanceProgression progression = getFromMap(progressionsMap,
 				danceResults.getInt("progression_id"), "Progression", name,
 				DanceProgressionImpl.UNKNOWN);
-		return new DanceRowImpl(id, name, length, shape, type, couples, source,
-				progression);
+		builder.add(id, name, length, shape, type, couples, source, progression);
+	}
+
+	/**
+	 * Find the dances matching a search term.
+	 *
+	 * @param term the search term
+	 * @param mode how to match the term against the dances
+	 * @return the matching dances: for a {@link SearchMode#QUERY structured query}, in
+	 * the order they appear in {@link #getDances()}, and otherwise with the most
+	 * relevant first. A query that cannot be parsed matches nothing; {@link
+	 * #search(String, SearchMode, Collection)} reports why.
+	 */
+	public List<DanceRow> search(final String term, final SearchMode mode) {
+		final Matches matches = matches(term, mode);
+		return Arrays.stream(ranked(matches.ordinals(), matches, term, mode))
+				       .mapToObj(dances::get).toList();
+	}
+
+	/**
+	 * @return the values the given facet takes among the dances, in the order they
+	 * should be shown to the user
+	 */
+	public List<FacetValue> facetValues(final Facet facet) {
+		return facetIndex.values(facet);
+	}
+
+	/**
+	 * Find the dances matching a search term, if any, and the given facet values. A
+	 * dance matches the facet values if, for each facet, it has one of the values given
+	 * for that facet, if any are.
+	 *
+	 * @param term   the search term, or null to match all dances
+	 * @param mode   how to match the term against the dances
+	 * @param facets the facet values chosen
+	 * @return the matching dances, how many would match for each facet value, and if
+	 * the term was a structured query that could not be parsed, why not
+	 */
+	public FacetedResults search(final @Nullable String term, final SearchMode mode,
+	                             final Collection<FacetValue> facets) {
+		final BitSet base = new BitSet(dances.size());
+		final BitSet matching = facetIndex.matching(facets, null);
+		final List<DanceRow> results;
+		@Nullable ParseException error = null;
+		if (term == null) {
+			base.set(0, dances.size());
+			results = matching.stream().mapToObj(dances::get).toList();
+		} else {
+			final Matches matches = matches(term, mode);
+			error = matches.error();
+			for (final int ordinal : matches.ordinals()) {
+				base.set(ordinal);
+			}
+			final int[] narrowed =
+					Arrays.stream(matches.ordinals()).filter(matching::get).toArray();
+			results = Arrays.stream(ranked(narrowed, matches, term, mode))
+					          .mapToObj(dances::get).toList();
+		}
+		return new FacetedResults(results, facetIndex.counts(base, facets), error);
+	}
+
+	/**
+	 * The dances a search matched.
+	 *
+	 * @param ordinals their ordinals, best match first for a fuzzy search and otherwise
+	 *                 in ascending order
+	 * @param distance for each of them, how many edits a fuzzy search needed to match
+	 *                 it; always zero for other searches
+	 * @param error    why the search term could not be parsed as a structured query, in
+	 *                 which case nothing matched; otherwise null
+	 */
+	private record Matches(int[] ordinals, IntUnaryOperator distance,
+	                       @Nullable ParseException error) {
+		private Matches(final int[] ordinals) {
+			this(ordinals, ordinal -> 0, null);
+		}
+
+		private Matches(final ParseException error) {
+			this(new int[0], ordinal -> 0, error);
+		}
+	}
+
+	/**
+	 * @return the dances matching the search term
+	 */
+	private Matches matches(final String term, final SearchMode mode) {
+		return switch (mode) {
+			case SUBSTRING -> new Matches(substringMatches(term));
+			case FULL_TEXT -> new Matches(fullTextMatches(term));
+			case QUERY -> queryMatches(term);
+			case FUZZY -> {
+				final Map<Integer, Integer> distances =
+						fuzzyIndex.distances(searchKeys.normalize(term));
+				yield new Matches(FuzzyIndex.closestFirst(distances),
+						ordinal -> distances.getOrDefault(ordinal, 0), null);
+			}
+		};
+	}
+
+	/**
+	 * Put the most relevant of a search's results first, unless the search was a
+	 * structured query, which has no single term to judge relevance by.
+	 *
+	 * @param ordinals the results, or those of them that are to be shown
+	 * @param matches  everything the search matched
+	 */
+	private int[] ranked(final int[] ordinals, final Matches matches, final String term,
+	                     final SearchMode mode) {
+		if (mode == SearchMode.QUERY) {
+			return ordinals;
+		} else {
+			return ranker.rank(ordinals, searchKeys.normalize(term), matches.distance());
+		}
+	}
+
+	private Matches queryMatches(final String term) {
+		final DanceQuery query;
+		try {
+			query = DanceQuery.parse(term);
+		} catch (final ParseException except) {
+			LOGGER.log(Level.FINE, "Malformed query", except);
+			return new Matches(except);
+		}
+		return new Matches(dances.filter(query.compile(dances, searchKeys, nameIndex)));
+	}
+
+	private int[] substringMatches(final String term) {
+		return nameIndex.search(searchKeys.normalize(term));
+	}
+
+	/**
+	 * Turn a search term into an FTS5 query matching rows that have, for each word in
+	 * the term, a word beginning with it. Since we split on anything that isn't a
+	 * letter or digit, the words never need quoting.
+	 *
+	 * @return the query, or the empty string if the term has no words in it
+	 */
+	private static String fullTextQuery(final String term) {
+		return Arrays.stream(term.split("[^\\p{L}\\p{N}]+"))
+				.filter(Predicate.not(String::isEmpty))
+				.map("\"%s\"*"::formatted).collect(Collectors.joining(" "));
+	}
+
+	private int[] fullTextMatches(final String term) {
+		final String query = fullTextQuery(term);
+		if (!fullTextAvailable || query.isEmpty()) {
+			return substringMatches(term);
+		}
+		final int[] matches;
+		try {
+			matches = readers.withReader(reader -> {
+				final PreparedStatement statement = reader.prepare(FULL_TEXT_QUERY);
+				statement.setString(1, query);
+				try (final ResultSet results = statement.executeQuery()) {
+					final List<Integer> found = new ArrayList<>();
+					while (results.next()) {
+						final Integer ordinal = ordinalsById.get(results.getInt(1));
+						if (ordinal != null) {
+							found.add(ordinal);
+						}
+					}
+					return found.stream().mapToInt(Integer::intValue).toArray();
+				}
+			});
+		} catch (final SQLException except) {
+			LOGGER.log(Level.WARNING, "SQL error in full-text search", except);
+			return substringMatches(term);
+		}
+		Arrays.sort(matches);
+		return matches;
 	}
 
 	public @Nullable String cribText(final DanceRow dance) {
+		final String cached = cribCache.get(dance.id());
+		if (cached != null) {
+			return cached;
+		}
 		try {
-			cribStatement.setInt(1, dance.id());
+			return readers.withReader(reader -> {
+				final PreparedStatement statement = reader.prepare(CRIB_QUERY);
+				statement.setInt(1, dance.id());
+				try (final ResultSet result = statement.executeQuery()) {
+					if (result.next()) {
+						final String retval = result.getString("text");
+						if (retval != null) {
+							cribCache.put(dance.id(), retval);
+						}
+						return retval;
+					} else {
+						return null;
+					}
+				}
+			});
 		} catch (final SQLException except) {
-			LOGGER.log(Level.WARNING, "SQL error preparing to get crib text", except);
+			LOGGER.log(Level.WARNING, "SQL error getting crib text", except);
 			return null;
 		}
-		try (final ResultSet result = cribStatement.executeQuery()) {
-			if (result.next()) {
-				return result.getString("text");
+	}
+
+	@SuppressWarnings("SpellCheckingInspection")
+	private static String cribChunkQuery(final int size) {
+		return """
+				SELECT dance_id, text FROM dancecrib WHERE dance_id IN (%s) \
+				ORDER BY dance_id, format ASC""".formatted(
+						String.join(", ", Collections.nCopies(size, "?")));
+	}
+
+	private void readCribChunk(final PreparedStatement statement, final List<Integer> ids,
+	                           final Map<Integer, String> retval) throws SQLException {
+		for (int i = 0; i < ids.size(); i++) {
+			statement.setInt(i + 1, ids.get(i));
+		}
+		try (final ResultSet results = statement.executeQuery()) {
+			while (results.next()) {
+				// Rows for each dance come in format order; the first is the one we want.
+				final int id = results.getInt("dance_id");
+				final String text = results.getString("text");
+				if (text != null && !retval.containsKey(id)) {
+					retval.put(id, text);
+					cribCache.put(id, text);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the cribs for many dances at once. Those not already cached are fetched from
+	 * the database in chunks, rather than with a separate query for each dance as
+	 * {@link #cribText} does.
+	 *
+	 * @param dances the dances to get cribs for
+	 * @return the crib for each dance, keyed by dance ID; dances without cribs are
+	 * omitted. If a database error occurs, the cribs found before it are returned.
+	 */
+	public Map<Integer, String> cribTexts(
+			final Collection<? extends DanceRow> dances) {
+		final List<Integer> requested =
+				dances.stream().map(DanceRow::id).distinct().toList();
+		final Map<Integer, String> retval = new HashMap<>(requested.size());
+		final List<Integer> ids = new ArrayList<>(requested.size());
+		for (final Integer id : requested) {
+			final String cached = cribCache.get(id);
+			if (cached == null) {
+				ids.add(id);
 			} else {
-				return null;
+				retval.put(id, cached);
 			}
+		}
+		if (ids.isEmpty()) {
+			return retval;
+		}
+		try {
+			readers.withReader(reader -> {
+				for (int start = 0; start < ids.size(); start += CRIB_CHUNK_SIZE) {
+					final List<Integer> chunk = ids.subList(start,
+							Math.min(ids.size(), start + CRIB_CHUNK_SIZE));
+					if (chunk.size() == CRIB_CHUNK_SIZE) {
+						readCribChunk(reader.prepare(CRIB_CHUNK_QUERY), chunk, retval);
+					} else {
+						try (final PreparedStatement statement = reader.connection()
+								.prepareStatement(cribChunkQuery(chunk.size()))) {
+							readCribChunk(statement, chunk, retval);
+						}
+					}
+				}
+				return null;
+			});
 		} catch (final SQLException except) {
-			LOGGER.log(Level.WARNING, "SQL error getting crib text", except);
-			return null;
+			LOGGER.log(Level.WARNING, "SQL error getting crib texts", except);
 		}
+		return retval;
+	}
+
+	/**
+	 * @return the hit, miss, and eviction counts and current size of the crib cache
+	 */
+	public CacheStatistics cribCacheStatistics() {
+		return cribCache.statistics();
 	}
 
 	@Override
@@ -177,6 +748,14 @@ public class DanceDatabase implements AutoCloseable {
 
 	@Override
 	public void close() throws SQLException {
-		sql.close();
+		readers.close();
+		if (fullTextTemporary && fullTextFile != null) {
+			try {
+				Files.deleteIfExists(fullTextFile);
+			} catch (final IOException except) {
+				LOGGER.log(Level.FINE, "Couldn't delete temporary full-text index",
+						except);
+			}
+		}
 	}
 }
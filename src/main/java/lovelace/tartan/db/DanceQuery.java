@@ -0,0 +1,377 @@
+package lovelace.tartan.db;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A structured search query over the dance catalogue, such as
+ * {@code type:reel bars:32 couples:3 shape:"Sq Set" name:flower}.
+ * <p>
+ * A query is a sequence of terms, all of which a dance must match. Terms may be
+ * separated by {@code OR}, which binds more loosely than the implicit "and"; grouped
+ * with parentheses; and negated with a leading {@code -}. A term is either a bare word,
+ * which the dance's name must contain, or {@code field:value}, where the field is one of
+ * <ul>
+ *     <li>{@code name}, which the dance's name must contain</li>
+ *     <li>{@code source} (or {@code book}), which the dance's source must contain</li>
+ *     <li>{@code type}, {@code shape} (or {@code formation}), or {@code progression},
+ *     where the value must be the abbreviation of the dance's type, shape, or
+ *     progression, or the beginning of its name</li>
+ *     <li>{@code bars} (or {@code length}) or {@code couples}, where the value is a
+ *     number, optionally preceded by one of {@code <}, {@code <=}, {@code >}, or
+ *     {@code >=}</li>
+ * </ul>
+ * Values containing spaces may be quoted. Matching ignores case and accents.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class DanceQuery {
+	/**
+	 * The fields a term can match against.
+	 */
+	private enum Field {
+		NAME("name"), SOURCE("source", "book"), TYPE("type"),
+		SHAPE("shape", "formation"), PROGRESSION("progression"),
+		BARS("bars", "length"), COUPLES("couples");
+
+		private final List<String> names;
+
+		Field(final String... names) {
+			this.names = List.of(names);
+		}
+
+		private static @Nullable Field named(final String name) {
+			final String lower = name.toLowerCase(Locale.ROOT);
+			return Arrays.stream(values()).filter(field -> field.names.contains(lower))
+					.findAny().orElse(null);
+		}
+	}
+
+	/**
+	 * A node in the parsed query.
+	 */
+	private sealed interface Node {
+	}
+
+	private record And(List<Node> children) implements Node {
+	}
+
+	private record Or(List<Node> children) implements Node {
+	}
+
+	private record Not(Node child) implements Node {
+	}
+
+	private record Term(Field field, String value) implements Node {
+	}
+
+	/**
+	 * The kinds of token in a query.
+	 */
+	private enum TokenType {
+		WORD, QUOTED, COLON, OPEN, CLOSE, NOT, OR
+	}
+
+	private record Token(TokenType type, String text, int position) {
+	}
+
+	private final String source;
+
+	private final Node root;
+
+	private DanceQuery(final String source, final Node root) {
+		this.source = source;
+		this.root = root;
+	}
+
+	private static boolean endsWord(final char character) {
+		return Character.isWhitespace(character) || character == ':' ||
+				       character == '(' || character == ')' || character == '"';
+	}
+
+	private static List<Token> tokenize(final String query) throws ParseException {
+		final List<Token> retval = new ArrayList<>();
+		int index = 0;
+		while (index < query.length()) {
+			final char current = query.charAt(index);
+			if (Character.isWhitespace(current)) {
+				index++;
+			} else if (current == ':') {
+				retval.add(new Token(TokenType.COLON, ":", index));
+				index++;
+			} else if (current == '(') {
+				retval.add(new Token(TokenType.OPEN, "(", index));
+				index++;
+			} else if (current == ')') {
+				retval.add(new Token(TokenType.CLOSE, ")", index));
+				index++;
+			} else if (current == '-' && (retval.isEmpty() ||
+					retval.getLast().type() != TokenType.COLON)) {
+				retval.add(new Token(TokenType.NOT, "-", index));
+				index++;
+			} else if (current == '"') {
+				final int end = query.indexOf('"', index + 1);
+				if (end < 0) {
+					throw new ParseException("Unterminated quotation", index);
+				}
+				retval.add(new Token(TokenType.QUOTED, query.substring(index + 1, end),
+						index));
+				index = end + 1;
+			} else {
+				final int start = index;
+				while (index < query.length() && !endsWord(query.charAt(index))) {
+					index++;
+				}
+				final String word = query.substring(start, index);
+				retval.add(new Token("OR".equals(word) ? TokenType.OR : TokenType.WORD,
+						word, start));
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * A recursive-descent parser over a list of tokens.
+	 */
+	private static final class Parser {
+		private final List<Token> tokens;
+		private final int end;
+		private int index = 0;
+
+		private Parser(final List<Token> tokens, final int end) {
+			this.tokens = tokens;
+			this.end = end;
+		}
+
+		private @Nullable Token peek() {
+			return (index < tokens.size()) ? tokens.get(index) : null;
+		}
+
+		private boolean peekIs(final TokenType type) {
+			final Token next = peek();
+			return next != null && next.type() == type;
+		}
+
+		private Token pop(final String expected) throws ParseException {
+			final Token next = peek();
+			if (next == null) {
+				throw new ParseException("Expected %s".formatted(expected), end);
+			}
+			index++;
+			return next;
+		}
+
+		private Node parseOr() throws ParseException {
+			final List<Node> children = new ArrayList<>();
+			children.add(parseAnd());
+			while (peekIs(TokenType.OR)) {
+				index++;
+				children.add(parseAnd());
+			}
+			return (children.size() == 1) ? children.getFirst() : new Or(children);
+		}
+
+		private Node parseAnd() throws ParseException {
+			final List<Node> children = new ArrayList<>();
+			children.add(parseUnary());
+			while (peek() != null && !peekIs(TokenType.OR) && !peekIs(TokenType.CLOSE)) {
+				children.add(parseUnary());
+			}
+			return (children.size() == 1) ? children.getFirst() : new And(children);
+		}
+
+		private Node parseUnary() throws ParseException {
+			final Token token = pop("a search term");
+			switch (token.type()) {
+				case NOT -> {
+					return new Not(parseUnary());
+				}
+				case OPEN -> {
+					final Node retval = parseOr();
+					if (pop("')'").type() != TokenType.CLOSE) {
+						throw new ParseException("Expected ')'", tokens.get(index - 1)
+								.position());
+					}
+					return retval;
+				}
+				case WORD, QUOTED -> {
+					if (token.type() == TokenType.WORD && peekIs(TokenType.COLON)) {
+						index++;
+						final Field field = Field.named(token.text());
+						if (field == null) {
+							throw new ParseException("Unknown field " + token.text(),
+									token.position());
+						}
+						final Token value = pop("a value");
+						if (value.type() != TokenType.WORD &&
+								    value.type() != TokenType.QUOTED) {
+							throw new ParseException("Expected a value",
+									value.position());
+						}
+						if ((field == Field.BARS || field == Field.COUPLES) &&
+								    parseComparison(value.text()) == null) {
+							throw new ParseException("Expected a number",
+									value.position());
+						}
+						return new Term(field, value.text());
+					} else {
+						return new Term(Field.NAME, token.text());
+					}
+				}
+				default -> throw new ParseException("Unexpected " + token.text(),
+						token.position());
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "DanceQuery.Parser at token " + index;
+		}
+	}
+
+	/**
+	 * Parse a query.
+	 *
+	 * @param query the query as typed by the user
+	 * @throws ParseException if the query is malformed
+	 */
+	public static DanceQuery parse(final String query) throws ParseException {
+		final List<Token> tokens = tokenize(query);
+		if (tokens.isEmpty()) {
+			throw new ParseException("Empty query", 0);
+		}
+		final Parser parser = new Parser(tokens, query.length());
+		final Node root = parser.parseOr();
+		final Token extra = parser.peek();
+		if (extra != null) {
+			throw new ParseException("Unexpected " + extra.text(), extra.position());
+		}
+		return new DanceQuery(query, root);
+	}
+
+	/**
+	 * Parse a numeric comparison like "32", "<=4", or ">48".
+	 *
+	 * @return a predicate implementing it, or null if it is malformed
+	 */
+	private static @Nullable IntPredicate parseComparison(final String value) {
+		final String operator;
+		if (value.startsWith("<=") || value.startsWith(">=")) {
+			operator = value.substring(0, 2);
+		} else if (value.startsWith("<") || value.startsWith(">") ||
+				           value.startsWith("=")) {
+			operator = value.substring(0, 1);
+		} else {
+			operator = "=";
+		}
+		final int number;
+		try {
+			number = Integer.parseInt(value.substring(
+					value.startsWith(operator) ? operator.length() : 0));
+		} catch (final NumberFormatException except) {
+			return null;
+		}
+		return switch (operator) {
+			case "<" -> actual -> actual >= 0 && actual < number;
+			case "<=" -> actual -> actual >= 0 && actual <= number;
+			case ">" -> actual -> actual > number;
+			case ">=" -> actual -> actual >= number;
+			default -> actual -> actual == number;
+		};
+	}
+
+	/**
+	 * The form in which names and abbreviations of types, shapes, and progressions are
+	 * compared: their search keys, without spaces or punctuation, so that "Sq Set"
+	 * matches "Sq.Set".
+	 */
+	private static String facetKey(final SearchKeyNormalizer normalizer,
+	                               final String string) {
+		return normalizer.normalize(string).replaceAll("[^\\p{L}\\p{N}]+", "");
+	}
+
+	private static boolean facetMatches(final SearchKeyNormalizer normalizer,
+	                                    final String value, final String name,
+	                                    final String abbreviation) {
+		return facetKey(normalizer, name).startsWith(value) ||
+				       facetKey(normalizer, abbreviation).equals(value);
+	}
+
+	private static IntPredicate compile(final Node node, final DanceCatalogue catalogue,
+	                                    final SearchKeyNormalizer normalizer,
+	                                    final TrigramIndex nameIndex) {
+		return switch (node) {
+			case And(List<Node> children) -> children.stream()
+					.map(child -> compile(child, catalogue, normalizer, nameIndex))
+					.reduce(IntPredicate::and).orElse(ordinal -> true);
+			case Or(List<Node> children) -> children.stream()
+					.map(child -> compile(child, catalogue, normalizer, nameIndex))
+					.reduce(IntPredicate::or).orElse(ordinal -> false);
+			case Not(Node child) ->
+					compile(child, catalogue, normalizer, nameIndex).negate();
+			case Term(Field field, String value) ->
+					compileTerm(field, value, catalogue, normalizer, nameIndex);
+		};
+	}
+
+	@SuppressWarnings("DataFlowIssue") // numeric values were checked when parsed
+	private static IntPredicate compileTerm(final Field field, final String value,
+	                                        final DanceCatalogue catalogue,
+	                                        final SearchKeyNormalizer normalizer,
+	                                        final TrigramIndex nameIndex) {
+		return switch (field) {
+			case NAME -> {
+				final BitSet matches = new BitSet(catalogue.size());
+				for (final int ordinal : nameIndex.search(normalizer.normalize(value))) {
+					matches.set(ordinal);
+				}
+				yield matches::get;
+			}
+			case SOURCE -> {
+				final String key = normalizer.normalize(value);
+				yield catalogue.sourceFilter(source -> source != null &&
+						normalizer.normalize(source).contains(key));
+			}
+			case TYPE -> {
+				final String key = facetKey(normalizer, value);
+				yield catalogue.typeFilter(type -> facetMatches(normalizer, key,
+						type.name(), type.abbreviation()));
+			}
+			case SHAPE -> {
+				final String key = facetKey(normalizer, value);
+				yield catalogue.shapeFilter(shape -> facetMatches(normalizer, key,
+						shape.name(), shape.abbreviation()));
+			}
+			case PROGRESSION -> {
+				final String key = facetKey(normalizer, value);
+				yield catalogue.progressionFilter(progression -> facetKey(normalizer,
+						progression.name()).startsWith(key));
+			}
+			case BARS -> catalogue.lengthFilter(parseComparison(value));
+			case COUPLES -> catalogue.couplesFilter(parseComparison(value));
+		};
+	}
+
+	/**
+	 * Compile this query into a filter over the ordinals of the given catalogue. Work
+	 * that depends only on the query, such as matching a type name against each
+	 * distinct type or searching the name index, is done once here rather than for
+	 * each dance.
+	 */
+	IntPredicate compile(final DanceCatalogue catalogue,
+	                     final SearchKeyNormalizer normalizer,
+	                     final TrigramIndex nameIndex) {
+		return compile(root, catalogue, normalizer, nameIndex);
+	}
+
+	@Override
+	public String toString() {
+		return "DanceQuery: " + source;
+	}
+}
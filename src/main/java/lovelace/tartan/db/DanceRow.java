@@ -1,5 +1,7 @@
 package lovelace.tartan.db;
 
+import java.util.List;
+
 /**
  * A dance in the database.
  *
@@ -31,9 +33,16 @@ public interface DanceRow {
 	 */
 	int couples();
 	/**
-	 * The source for this dance.
+	 * The source for this dance, or the first of them if it has been published in more
+	 * than one place.
 	 */
 	String source();
+	/**
+	 * All the sources for this dance.
+	 */
+	default List<String> sources() {
+		return List.of(source());
+	}
 	/**
 	 * The progression used between times through the dance.
 	 */
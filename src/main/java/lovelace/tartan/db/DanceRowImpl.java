@@ -111,7 +111,7 @@ public record DanceRowImpl(int id, String name, int length,
 			return id == row.id() && name.equals(row.name()) &&
 				length == row.length() && shape.equals(row.shape()) &&
 				type.equals(row.type()) && couples == row.couples() &&
-				source.equals(row.source()) &&
+				sources().equals(row.sources()) &&
 				progression.equals(row.progression());
 		} else {
 			return false;
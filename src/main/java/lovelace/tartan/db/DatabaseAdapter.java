@@ -35,8 +35,22 @@ public final class DatabaseAdapter {
 	 */
 	public static Dance convertDance(final DanceRow dbRow,
 									 final @Nullable String crib) {
+		return convertDance(dbRow, dbRow.source(), crib);
+	}
+
+	/**
+	 * Convert a dance in the database to a dance suitable to be written to LaTeX.
+	 *
+	 * @param dbRow  the database row
+	 * @param source which of the dance's publications to cite
+	 * @param crib   the crib associated with the dance in the database, or null if none
+	 *               available
+	 * @return the {@link Dance} object based on the row and the crib
+	 */
+	public static Dance convertDance(final DanceRow dbRow, final String source,
+	                                 final @Nullable String crib) {
 		final Dance retval =
-				new DanceImpl(dbRow.name(), dbRow.source(), dbRow.type().name(),
+				new DanceImpl(dbRow.name(), source, dbRow.type().name(),
 						timesThrough(dbRow.shape(), dbRow.progression(),
 								dbRow.couples()), dbRow.length(),
 						dbRow.shape().abbreviation());
@@ -0,0 +1,28 @@
+package lovelace.tartan.db;
+
+/**
+ * Attributes of dances that searches can be narrowed by.
+ *
+ * @author Jonathan Lovelace
+ */
+public enum Facet {
+	TYPE("Type"),
+	SHAPE("Shape"),
+	PROGRESSION("Progression"),
+	COUPLES("Couples"),
+	BARS("Bars");
+
+	/**
+	 * A description of this facet, suitable for the user.
+	 */
+	private final String description;
+
+	Facet(final String description) {
+		this.description = description;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
@@ -0,0 +1,141 @@
+package lovelace.tartan.db;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * For each value of each {@link Facet}, the set of catalogue ordinals of the dances
+ * with that value, as a {@link BitSet}. Narrowing by facets is then a matter of a few
+ * word-at-a-time ANDs and ORs rather than an examination of every dance.
+ *
+ * @author Jonathan Lovelace
+ */
+final class FacetIndex {
+	/**
+	 * The values of each facet, in the order they should be shown.
+	 */
+	private final Map<Facet, List<FacetValue>> values = new EnumMap<>(Facet.class);
+
+	/**
+	 * The dances with each value.
+	 */
+	private final Map<FacetValue, BitSet> dances = new HashMap<>();
+
+	/**
+	 * How many dances the catalogue has.
+	 */
+	private final int size;
+
+	private static String nonNull(final @Nullable String label) {
+		return (label == null) ? "Unknown" : label;
+	}
+
+	private void index(final Facet facet, final IntFunction<String> labeller,
+	                   final Comparator<FacetValue> order) {
+		for (int ordinal = 0; ordinal < size; ordinal++) {
+			dances.computeIfAbsent(new FacetValue(facet, labeller.apply(ordinal)),
+					ignored -> new BitSet(size)).set(ordinal);
+		}
+		values.put(facet, dances.keySet().stream()
+				.filter(value -> value.facet() == facet).sorted(order).toList());
+	}
+
+	/**
+	 * Sort numeric labels numerically, with any others (such as "Other") after them.
+	 */
+	private static int numericOrder(final FacetValue value) {
+		try {
+			return Integer.parseInt(value.label());
+		} catch (final NumberFormatException except) {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	FacetIndex(final DanceCatalogue catalogue) {
+		size = catalogue.size();
+		final Comparator<FacetValue> alphabetical =
+				Comparator.comparing(FacetValue::label, String.CASE_INSENSITIVE_ORDER);
+		final Comparator<FacetValue> numeric =
+				Comparator.comparingInt(FacetIndex::numericOrder);
+		index(Facet.TYPE, ordinal -> nonNull(catalogue.type(ordinal).name()),
+				alphabetical);
+		index(Facet.SHAPE, ordinal -> nonNull(catalogue.shape(ordinal).name()),
+				alphabetical);
+		index(Facet.PROGRESSION,
+				ordinal -> nonNull(catalogue.progression(ordinal).name()), alphabetical);
+		index(Facet.COUPLES, ordinal -> (catalogue.couples(ordinal) < 0) ? "Other" :
+				Integer.toString(catalogue.couples(ordinal)), numeric);
+		index(Facet.BARS, ordinal -> Integer.toString(catalogue.length(ordinal)),
+				numeric);
+	}
+
+	/**
+	 * @return the values of the given facet, in the order they should be shown
+	 */
+	List<FacetValue> values(final Facet facet) {
+		return values.get(facet);
+	}
+
+	/**
+	 * @return the dances matching the given facet values: for each facet with any
+	 * values given, those with any of them, ignoring the given facet if any
+	 */
+	BitSet matching(final Collection<FacetValue> selected,
+	                final @Nullable Facet ignored) {
+		final BitSet retval = new BitSet(size);
+		retval.set(0, size);
+		for (final Facet facet : Facet.values()) {
+			if (facet == ignored) {
+				continue;
+			}
+			final BitSet any = new BitSet(size);
+			boolean constrained = false;
+			for (final FacetValue value : selected) {
+				if (value.facet() == facet) {
+					constrained = true;
+					final BitSet bits = dances.get(value);
+					if (bits != null) {
+						any.or(bits);
+					}
+				}
+			}
+			if (constrained) {
+				retval.and(any);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @param base     the dances to count among, such as the results of a search
+	 * @param selected the facet values chosen
+	 * @return for each value of each facet, how many dances in the base set would match
+	 * if that were the only value chosen for its facet
+	 */
+	Map<FacetValue, Integer> counts(final BitSet base,
+	                                final Collection<FacetValue> selected) {
+		final Map<FacetValue, Integer> retval = new HashMap<>(dances.size());
+		for (final Facet facet : Facet.values()) {
+			final BitSet others = matching(selected, facet);
+			others.and(base);
+			for (final FacetValue value : values(facet)) {
+				final BitSet bits = (BitSet) dances.get(value).clone();
+				bits.and(others);
+				retval.put(value, bits.cardinality());
+			}
+		}
+		return retval;
+	}
+
+	@Override
+	public String toString() {
+		return "FacetIndex of %d values over %d dances".formatted(dances.size(), size);
+	}
+}
@@ -0,0 +1,17 @@
+package lovelace.tartan.db;
+
+/**
+ * One value of a {@link Facet}, such as the type "Reel" or the number of couples 3.
+ * Values are identified by their labels, so dances whose types (for example) have the
+ * same name share a value.
+ *
+ * @param facet the facet this is a value of
+ * @param label how this value is shown to the user
+ * @author Jonathan Lovelace
+ */
+public record FacetValue(Facet facet, String label) {
+	@Override
+	public String toString() {
+		return label;
+	}
+}
@@ -0,0 +1,29 @@
+package lovelace.tartan.db;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The results of a search narrowed by facets.
+ *
+ * @param dances the matching dances, in the order the search ranked them
+ * @param counts     for each value of each facet, how many dances would match if that
+ *                   value were chosen in place of any other value chosen for its facet
+ * @param queryError if the search was a {@link SearchMode#QUERY structured query} that
+ *                   could not be parsed, why not (with the position in the search term
+ *                   of the problem), in which case no dances match; otherwise null
+ * @author Jonathan Lovelace
+ */
+public record FacetedResults(List<DanceRow> dances, Map<FacetValue, Integer> counts,
+                             @Nullable ParseException queryError) {
+	public FacetedResults {
+		counts = Map.copyOf(counts);
+	}
+
+	public FacetedResults(final List<DanceRow> dances,
+	                      final Map<FacetValue, Integer> counts) {
+		this(dances, counts, null);
+	}
+}
@@ -0,0 +1,328 @@
+package lovelace.tartan.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * An index for finding strings with words that are spelled <em>almost</em> like the
+ * words of a search term, to tolerate typos and misremembered names.
+ * <p>
+ * The distinct words of the indexed strings are kept in a BK-tree: each word is a node,
+ * and each of its children is at a different (Levenshtein) edit distance from it. By
+ * the triangle inequality, a word within distance {@code k} of the search word can only
+ * be under a child whose distance from its parent differs by at most {@code k} from the
+ * search word's distance to that parent, so most of the tree is never visited.
+ * <p>
+ * Since this is searched as the user types, the last word of a search term may be
+ * unfinished, so it need only be within a few edits of the <em>beginning</em> of a
+ * word. That is not a distance the tree can be searched by, so for it every word is
+ * checked, abandoning each as soon as it is clearly too far off.
+ *
+ * @author Jonathan Lovelace
+ */
+final class FuzzyIndex {
+	/**
+	 * The distinct words of all the keys. Words are separated by anything but letters,
+	 * digits, and apostrophes; apostrophes are dropped, so that "Mairi's" and "Mairis"
+	 * are the same word. Each word is a node of the BK-tree, with the first as its root.
+	 */
+	private final String[] words;
+
+	/**
+	 * For each word, the ordinals of the keys containing it, in ascending order.
+	 */
+	private final int[][] postings;
+
+	/**
+	 * For each word, the index of its first child in the tree, or -1 if it has none.
+	 */
+	private final int[] firstChild;
+
+	/**
+	 * For each word, the index of the next child of its parent, or -1 if it is the
+	 * last.
+	 */
+	private final int[] nextSibling;
+
+	/**
+	 * For each word, its edit distance from its parent.
+	 */
+	private final int[] parentDistance;
+
+	/**
+	 * @return the distinct words of the given (normalized) string, in order
+	 */
+	private static List<String> wordsOf(final String key) {
+		final List<String> retval = new ArrayList<>(4);
+		final StringBuilder word = new StringBuilder();
+		for (int i = 0; i <= key.length(); i++) {
+			final char character = (i < key.length()) ? key.charAt(i) : ' ';
+			if (Character.isLetterOrDigit(character)) {
+				word.append(character);
+			} else if (character != '\'' && !word.isEmpty()) {
+				final String found = word.toString();
+				if (!retval.contains(found)) {
+					retval.add(found);
+				}
+				word.setLength(0);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return the Levenshtein distance between the two strings
+	 */
+	private static int distance(final String first, final String second) {
+		int[] previous = new int[second.length() + 1];
+		int[] current = new int[second.length() + 1];
+		for (int j = 0; j <= second.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= first.length(); i++) {
+			current[0] = i;
+			final char character = first.charAt(i - 1);
+			for (int j = 1; j <= second.length(); j++) {
+				final int substitution = previous[j - 1] +
+						((character == second.charAt(j - 1)) ? 0 : 1);
+				current[j] = Math.min(substitution,
+						Math.min(previous[j], current[j - 1]) + 1);
+			}
+			final int[] temp = previous;
+			previous = current;
+			current = temp;
+		}
+		return previous[second.length()];
+	}
+
+	/**
+	 * @param limit the largest distance of interest
+	 * @return the smallest Levenshtein distance between the given prefix and the
+	 * beginning of the given word, or more than the limit if it is more than that
+	 */
+	private static int prefixDistance(final String prefix, final String word,
+	                                  final int limit) {
+		// No beginning of the word longer than this can be within the limit.
+		final int columns = Math.min(word.length(), prefix.length() + limit);
+		int[] previous = new int[columns + 1];
+		int[] current = new int[columns + 1];
+		for (int j = 0; j <= columns; j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= prefix.length(); i++) {
+			current[0] = i;
+			int best = i;
+			final char character = prefix.charAt(i - 1);
+			for (int j = 1; j <= columns; j++) {
+				final int substitution = previous[j - 1] +
+						((character == word.charAt(j - 1)) ? 0 : 1);
+				current[j] = Math.min(substitution,
+						Math.min(previous[j], current[j - 1]) + 1);
+				best = Math.min(best, current[j]);
+			}
+			// The smallest value in a row never decreases from one row to the next.
+			if (best > limit) {
+				return limit + 1;
+			}
+			final int[] temp = previous;
+			previous = current;
+			current = temp;
+		}
+		int retval = previous[0];
+		for (int j = 1; j <= columns; j++) {
+			retval = Math.min(retval, previous[j]);
+		}
+		return retval;
+	}
+
+	/**
+	 * How many edits to tolerate in a word of the search term. Any short word is within
+	 * a couple of edits of a great many others, so we allow fewer for shorter words.
+	 */
+	@SuppressWarnings("MagicNumber")
+	private static int tolerance(final String word) {
+		if (word.length() <= 2) {
+			return 0;
+		} else if (word.length() <= 5) {
+			return 1;
+		} else {
+			return 2;
+		}
+	}
+
+	/**
+	 * @param keys the (normalized) strings to index; their positions in this list are
+	 *             the ordinals searches return
+	 */
+	FuzzyIndex(final List<String> keys) {
+		final Map<String, PostingBuilder> builders = new LinkedHashMap<>();
+		// Many keys appear more than once, so split each distinct key only once.
+		final Map<String, List<String>> split = new HashMap<>();
+		for (int ordinal = 0; ordinal < keys.size(); ordinal++) {
+			for (final String word :
+					split.computeIfAbsent(keys.get(ordinal), FuzzyIndex::wordsOf)) {
+				builders.computeIfAbsent(word, ignored -> new PostingBuilder())
+						.add(ordinal);
+			}
+		}
+		words = builders.keySet().toArray(String[]::new);
+		postings = new int[words.length][];
+		for (int i = 0; i < words.length; i++) {
+			postings[i] = builders.get(words[i]).toArray();
+		}
+		firstChild = new int[words.length];
+		nextSibling = new int[words.length];
+		parentDistance = new int[words.length];
+		Arrays.fill(firstChild, -1);
+		Arrays.fill(nextSibling, -1);
+		for (int i = 1; i < words.length; i++) {
+			insert(i);
+		}
+	}
+
+	/**
+	 * Add a word to the tree, under the first node that has no child at the same
+	 * distance from it as the new word.
+	 */
+	private void insert(final int word) {
+		int node = 0;
+		while (true) {
+			final int dist = distance(words[word], words[node]);
+			int child = firstChild[node];
+			while (child >= 0 && parentDistance[child] != dist) {
+				child = nextSibling[child];
+			}
+			if (child < 0) {
+				parentDistance[word] = dist;
+				nextSibling[word] = firstChild[node];
+				firstChild[node] = word;
+				return;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * For each key containing a word within the given edit distance of the given
+	 * word, record the smallest such distance.
+	 */
+	private Map<Integer, Integer> closestMatches(final String word, final int tolerance) {
+		final Map<Integer, Integer> retval = new HashMap<>();
+		if (words.length == 0) {
+			return retval;
+		}
+		final Deque<Integer> stack = new ArrayDeque<>();
+		stack.push(0);
+		while (!stack.isEmpty()) {
+			final int node = stack.pop();
+			final int dist = distance(word, words[node]);
+			if (dist <= tolerance) {
+				for (final int ordinal : postings[node]) {
+					retval.merge(ordinal, dist, Math::min);
+				}
+			}
+			for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+				if (Math.abs(parentDistance[child] - dist) <= tolerance) {
+					stack.push(child);
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * For each key containing a word that begins with something within the given edit
+	 * distance of the given (unfinished) word, record the smallest such distance.
+	 */
+	private Map<Integer, Integer> closestPrefixMatches(final String prefix,
+	                                                   final int tolerance) {
+		final Map<Integer, Integer> retval = new HashMap<>();
+		for (int node = 0; node < words.length; node++) {
+			final int dist = prefixDistance(prefix, words[node], tolerance);
+			if (dist <= tolerance) {
+				for (final int ordinal : postings[node]) {
+					retval.merge(ordinal, dist, Math::min);
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Find the keys that have, for each word in the given term, a word within a few
+	 * edits of it. If the term does not end in a space or punctuation, its last word
+	 * may be unfinished, and need only be within a few edits of the beginning of a word.
+	 *
+	 * @param term the (normalized) term to search for
+	 * @return the ordinals of the matching keys, those needing the fewest edits in all
+	 * first, and otherwise in ascending order
+	 */
+	int[] search(final String term) {
+		return closestFirst(distances(term));
+	}
+
+	/**
+	 * Find the keys that have, for each word in the given term, a word within a few
+	 * edits of it, and how many edits each needed. If the term does not end in a space
+	 * or punctuation, its last word need only match the beginning of a word.
+	 *
+	 * @param term the (normalized) term to search for
+	 * @return the ordinals of the matching keys, each mapped to the total number of edits
+	 * needed to match the term's words to its words
+	 */
+	Map<Integer, Integer> distances(final String term) {
+		int split = term.length();
+		while (split > 0 && (Character.isLetterOrDigit(term.charAt(split - 1)) ||
+				                     term.charAt(split - 1) == '\'')) {
+			split--;
+		}
+		final String unfinished = term.substring(split).replace("'", "");
+		final List<String> finished = wordsOf(term.substring(0, split));
+		@Nullable Map<Integer, Integer> distances = null;
+		for (int i = 0; i <= finished.size(); i++) {
+			final Map<Integer, Integer> forWord;
+			if (i < finished.size()) {
+				final String word = finished.get(i);
+				forWord = closestMatches(word, tolerance(word));
+			} else if (unfinished.isEmpty()) {
+				break;
+			} else {
+				forWord = closestPrefixMatches(unfinished, tolerance(unfinished));
+			}
+			if (distances == null) {
+				distances = forWord;
+			} else {
+				distances.keySet().retainAll(forWord.keySet());
+				distances.replaceAll((ordinal, dist) -> dist + forWord.get(ordinal));
+			}
+			if (distances.isEmpty()) {
+				break;
+			}
+		}
+		return (distances == null) ? Map.of() : distances;
+	}
+
+	/**
+	 * @param distances the ordinals {@link #distances} found, with their distances
+	 * @return the ordinals, those needing the fewest edits first, and otherwise in
+	 * ascending order
+	 */
+	static int[] closestFirst(final Map<Integer, Integer> distances) {
+		return distances.entrySet().stream()
+				       .sorted(Map.Entry.<Integer, Integer>comparingByValue()
+						               .thenComparing(Map.Entry.comparingByKey()))
+				       .mapToInt(Map.Entry::getKey).toArray();
+	}
+
+	@Override
+	public String toString() {
+		return "FuzzyIndex of %d words".formatted(words.length);
+	}
+}
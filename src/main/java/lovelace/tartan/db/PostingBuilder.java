@@ -0,0 +1,30 @@
+package lovelace.tartan.db;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ordinals, used while building an index's posting lists.
+ *
+ * @author Jonathan Lovelace
+ */
+final class PostingBuilder {
+	private int[] ordinals = new int[4];
+	private int size = 0;
+
+	void add(final int ordinal) {
+		if (size == ordinals.length) {
+			ordinals = Arrays.copyOf(ordinals, size * 2);
+		}
+		ordinals[size] = ordinal;
+		size++;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(ordinals, size);
+	}
+
+	@Override
+	public String toString() {
+		return "PostingBuilder with %d ordinals".formatted(size);
+	}
+}
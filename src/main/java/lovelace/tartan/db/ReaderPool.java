@@ -0,0 +1,234 @@
+package lovelace.tartan.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jspecify.annotations.Nullable;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * A small pool of read-only connections to a database, each with its own prepared
+ * statements, so that several threads can query the database at once without sharing
+ * statement state. Connections are opened as they are first needed, up to a fixed
+ * number; once that many are in use, further callers wait for one to be returned.
+ *
+ * @author Jonathan Lovelace
+ */
+final class ReaderPool implements AutoCloseable {
+	private static final Logger LOGGER = Logger.getLogger(ReaderPool.class.getName());
+
+	/**
+	 * Something to do with a connection, such as setting it up when it is opened.
+	 */
+	@FunctionalInterface
+	interface ConnectionTask {
+		void accept(Connection connection) throws SQLException;
+	}
+
+	/**
+	 * A query to run using one of the pool's connections.
+	 */
+	@FunctionalInterface
+	interface ReaderFunction<T extends @Nullable Object> {
+		T apply(Reader reader) throws SQLException;
+	}
+
+	/**
+	 * One of the pool's connections, with the statements prepared on it so far. Only
+	 * the thread that has borrowed it may use it.
+	 */
+	static final class Reader {
+		private final Connection connection;
+		private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+		private Reader(final Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * @return a statement for the given SQL, prepared the first time it is asked
+		 * for on this connection and reused thereafter. The caller must not close it.
+		 */
+		PreparedStatement prepare(final String sql) throws SQLException {
+			final PreparedStatement existing = statements.get(sql);
+			if (existing != null) {
+				return existing;
+			}
+			final PreparedStatement retval = connection.prepareStatement(sql);
+			statements.put(sql, retval);
+			return retval;
+		}
+
+		/**
+		 * @return the connection, for statements that are not worth keeping; the caller
+		 * must not close it
+		 */
+		Connection connection() {
+			return connection;
+		}
+
+		private void close() {
+			try {
+				connection.close();
+			} catch (final SQLException except) {
+				LOGGER.log(Level.WARNING, "Error closing database connection", except);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "ReaderPool.Reader with %d statements".formatted(statements.size());
+		}
+	}
+
+	private final SQLiteDataSource dataSource;
+	private final ConnectionTask setUp;
+	private final int capacity;
+	/**
+	 * The connections not currently in use. Once the pool is closed, this holds only an
+	 * empty value, which each caller waiting for a connection takes, puts back for the
+	 * next, and gives up.
+	 */
+	private final BlockingQueue<Optional<Reader>> idle = new LinkedBlockingQueue<>();
+	/**
+	 * How many connections are open or being opened. Guarded by this object.
+	 */
+	private int opened = 0;
+	/**
+	 * Whether the pool has been closed. Guarded by this object.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * @param url      the JDBC URL of the database
+	 * @param capacity the most connections to open at once
+	 * @param setUp    what to do with each connection when it is opened
+	 */
+	ReaderPool(final String url, final int capacity, final ConnectionTask setUp) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Pool must allow at least one connection");
+		}
+		final SQLiteConfig config = new SQLiteConfig();
+		config.setReadOnly(true);
+		dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl(url);
+		this.capacity = capacity;
+		this.setUp = setUp;
+	}
+
+	/**
+	 * Open a new connection, if we have not yet reached our limit.
+	 *
+	 * @return the new connection, or null if we are already at our limit
+	 */
+	private @Nullable Reader openReader() throws SQLException {
+		synchronized (this) {
+			if (closed) {
+				throw new SQLException("Connection pool has been closed");
+			} else if (opened >= capacity) {
+				return null;
+			}
+			opened++;
+		}
+		// Opening (and setting up) a connection may be slow, so is done without holding
+		// the lock.
+		Connection connection = null;
+		try {
+			connection = dataSource.getConnection();
+			setUp.accept(connection);
+		} catch (final SQLException | RuntimeException except) {
+			synchronized (this) {
+				opened--;
+			}
+			if (connection != null) {
+				connection.close();
+			}
+			throw except;
+		}
+		return new Reader(connection);
+	}
+
+	/**
+	 * @return the given idle connection, unless it is the marker left by {@link #close}
+	 */
+	private Reader checkOpen(final Optional<Reader> idleReader) throws SQLException {
+		if (idleReader.isPresent()) {
+			return idleReader.get();
+		}
+		idle.add(idleReader);
+		throw new SQLException("Connection pool has been closed");
+	}
+
+	private Reader acquire() throws SQLException {
+		final Optional<Reader> idleReader = idle.poll();
+		if (idleReader != null) {
+			return checkOpen(idleReader);
+		}
+		final Reader newReader = openReader();
+		if (newReader != null) {
+			return newReader;
+		}
+		try {
+			return checkOpen(idle.take());
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a database connection",
+					except);
+		}
+	}
+
+	private synchronized void release(final Reader reader) {
+		if (closed) {
+			opened--;
+			reader.close();
+		} else {
+			idle.add(Optional.of(reader));
+		}
+	}
+
+	/**
+	 * Run a query using one of the pool's connections, waiting for one to be free if
+	 * all are in use.
+	 */
+	<T extends @Nullable Object> T withReader(final ReaderFunction<T> function)
+			throws SQLException {
+		final Reader reader = acquire();
+		try {
+			return function.apply(reader);
+		} finally {
+			release(reader);
+		}
+	}
+
+	/**
+	 * Close the connections not in use, and any in use once they are returned. Callers
+	 * waiting for a connection are woken, and fail.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		// Until now, the queue held only connections.
+		for (final Optional<Reader> reader : idle) {
+			opened--;
+			reader.ifPresent(Reader::close);
+		}
+		idle.clear();
+		idle.add(Optional.empty());
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ReaderPool with %d of %d connections open".formatted(opened, capacity);
+	}
+}
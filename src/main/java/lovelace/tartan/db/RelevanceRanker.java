@@ -0,0 +1,143 @@
+package lovelace.tartan.db;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Puts the best matches for a search term at the front of a search's results.
+ * <p>
+ * A match's relevance is, first, how its name's search key contains the term: the whole
+ * key, then the start of the key, then the start of a word in it, then anywhere; last
+ * of all come keys that don't contain the term at all, which a fuzzy or full-text
+ * search may still have matched. Among keys that contain the term equally well, those a
+ * fuzzy search needed fewer edits to match come first, so that ranking never undoes the
+ * fuzzy search's own order; only then do dances that have appeared in more
+ * publications come first.
+ * <p>
+ * Users rarely look past the first screenful of results, so only the best
+ * {@link #RANKED} matches are ranked, which needs only a bounded heap rather than a
+ * sort of every match. The rest follow in the order the search returned them.
+ *
+ * @author Jonathan Lovelace
+ */
+final class RelevanceRanker {
+	/**
+	 * How many of the best matches to put in order at the front of the results.
+	 */
+	static final int RANKED = 100;
+
+	private static final int EXACT = 0;
+	private static final int PREFIX = 1;
+	private static final int WORD_START = 2;
+	private static final int SUBSTRING = 3;
+	private static final int OTHER = 4;
+
+	/**
+	 * The search key of each dance's name.
+	 */
+	private final List<String> keys;
+
+	/**
+	 * For each dance, how many publications it has appeared in.
+	 */
+	private final int[] popularity;
+
+	/**
+	 * @param keys      the search keys of the dances' names, by ordinal
+	 * @param catalogue the dances
+	 */
+	RelevanceRanker(final List<String> keys, final DanceCatalogue catalogue) {
+		this.keys = keys;
+		popularity = new int[catalogue.size()];
+		for (int ordinal = 0; ordinal < popularity.length; ordinal++) {
+			popularity[ordinal] = catalogue.sourceCount(ordinal);
+		}
+	}
+
+	/**
+	 * @return how well the given key matches the given term; lower is better
+	 */
+	private static int tier(final String key, final String term) {
+		final int index = key.indexOf(term);
+		if (index < 0 || term.isEmpty()) {
+			return OTHER;
+		} else if (index == 0) {
+			return (key.length() == term.length()) ? EXACT : PREFIX;
+		}
+		for (int start = index; start >= 0; start = key.indexOf(term, start + 1)) {
+			if (!Character.isLetterOrDigit(key.charAt(start - 1))) {
+				return WORD_START;
+			}
+		}
+		return SUBSTRING;
+	}
+
+	/**
+	 * Put the best matches for the given term first.
+	 *
+	 * @param ordinals the ordinals of the dances a search matched
+	 * @param term     the (normalized) search term
+	 * @return the same ordinals, with the best {@link #RANKED} of them at the front in
+	 * order of relevance, followed by the rest in their original order
+	 */
+	int[] rank(final int[] ordinals, final String term) {
+		return rank(ordinals, term, ordinal -> 0);
+	}
+
+	/**
+	 * Put the best matches for the given term first.
+	 *
+	 * @param ordinals the ordinals of the dances a search matched
+	 * @param term     the (normalized) search term
+	 * @param distance for each ordinal, how many edits the search needed to match it
+	 * @return the same ordinals, with the best {@link #RANKED} of them at the front in
+	 * order of relevance, followed by the rest in their original order
+	 */
+	int[] rank(final int[] ordinals, final String term, final IntUnaryOperator distance) {
+		final int[] tiers = new int[ordinals.length];
+		final int[] distances = new int[ordinals.length];
+		for (int i = 0; i < ordinals.length; i++) {
+			tiers[i] = tier(keys.get(ordinals[i]), term);
+			distances[i] = distance.applyAsInt(ordinals[i]);
+		}
+		// Positions in the results, best first; ties keep their original order.
+		final Comparator<Integer> relevance = Comparator.<Integer>comparingInt(
+						position -> tiers[position])
+				.thenComparingInt(position -> distances[position])
+				.thenComparingInt(position -> -popularity[ordinals[position]])
+				.thenComparingInt(position -> position);
+		// The heap's head is the worst of the best matches found so far.
+		final PriorityQueue<Integer> best =
+				new PriorityQueue<>(RANKED, relevance.reversed());
+		for (int i = 0; i < ordinals.length; i++) {
+			if (best.size() < RANKED) {
+				best.add(i);
+			} else if (relevance.compare(i, best.peek()) < 0) {
+				best.poll();
+				best.add(i);
+			}
+		}
+		final int[] retval = new int[ordinals.length];
+		final BitSet ranked = new BitSet(ordinals.length);
+		for (int i = best.size() - 1; i >= 0; i--) {
+			final int position = best.poll();
+			retval[i] = ordinals[position];
+			ranked.set(position);
+		}
+		int size = ranked.cardinality();
+		for (int i = ranked.nextClearBit(0); i < ordinals.length;
+		     i = ranked.nextClearBit(i + 1)) {
+			retval[size] = ordinals[i];
+			size++;
+		}
+		return retval;
+	}
+
+	@Override
+	public String toString() {
+		return "RelevanceRanker over %d dances".formatted(popularity.length);
+	}
+}
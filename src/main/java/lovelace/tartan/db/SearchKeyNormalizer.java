@@ -0,0 +1,100 @@
+package lovelace.tartan.db;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns dance names and search terms into "search keys," so that spellings a user would
+ * consider the same match each other. A key is made by decomposing the string
+ * (Unicode NFKD), dropping the accents and other combining marks that leaves, folding
+ * case, and then applying a list of {@link Equivalence equivalences} to the beginning
+ * of each word.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class SearchKeyNormalizer {
+	/**
+	 * A rule that a word beginning with one string should be treated as beginning with
+	 * another. Both strings should already be in key form (lower case, without accents).
+	 *
+	 * @param variant   the spelling to replace
+	 * @param canonical what to replace it with
+	 */
+	public record Equivalence(String variant, String canonical) {
+		public Equivalence {
+			if (variant.isEmpty()) {
+				throw new IllegalArgumentException("Variant spelling must not be empty");
+			}
+		}
+	}
+
+	/**
+	 * The equivalences used by {@link #DEFAULT}: "Mc" and "M'" are both treated as
+	 * "Mac", as Scottish names are spelled all three ways.
+	 */
+	public static final List<Equivalence> DEFAULT_EQUIVALENCES =
+			List.of(new Equivalence("mc", "mac"), new Equivalence("m'", "mac"));
+
+	/**
+	 * A normalizer using {@link #DEFAULT_EQUIVALENCES}.
+	 */
+	public static final SearchKeyNormalizer DEFAULT =
+			new SearchKeyNormalizer(DEFAULT_EQUIVALENCES);
+
+	/**
+	 * Combining marks, which are what accents become when a string is decomposed.
+	 */
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+	private final List<Equivalence> equivalences;
+
+	/**
+	 * The equivalences, compiled to patterns matching their variants at the start of a
+	 * word.
+	 */
+	private final List<Pattern> patterns;
+
+	/**
+	 * @param equivalences the rules for treating different spellings as the same,
+	 *                     applied in order
+	 */
+	public SearchKeyNormalizer(final List<Equivalence> equivalences) {
+		this.equivalences = List.copyOf(equivalences);
+		patterns = this.equivalences.stream().map(Equivalence::variant)
+				.map(variant -> Pattern.compile("(?<![\\p{L}\\p{N}])" +
+						Pattern.quote(variant))).toList();
+	}
+
+	/**
+	 * @return the rules this uses for treating different spellings as the same
+	 */
+	public List<Equivalence> getEquivalences() {
+		return equivalences;
+	}
+
+	/**
+	 * @param string a dance name or search term
+	 * @return its search key
+	 */
+	public String normalize(final String string) {
+		String retval = Normalizer.normalize(string, Normalizer.Form.NFKD);
+		retval = MARKS.matcher(retval).replaceAll("");
+		// Round-tripping through upper case folds characters like 'ß' that have no
+		// single-character lower-case equivalent.
+		retval = retval.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT)
+				.replace('’', '\'').replace('‘', '\'');
+		for (int i = 0; i < patterns.size(); i++) {
+			retval = patterns.get(i).matcher(retval).replaceAll(
+					Matcher.quoteReplacement(equivalences.get(i).canonical()));
+		}
+		return retval;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchKeyNormalizer with %d equivalences".formatted(equivalences.size());
+	}
+}
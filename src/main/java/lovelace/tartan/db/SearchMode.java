@@ -0,0 +1,42 @@
+package lovelace.tartan.db;
+
+/**
+ * Ways of matching a search term against the dances in the database.
+ *
+ * @author Jonathan Lovelace
+ */
+public enum SearchMode {
+	/**
+	 * Match dances whose names contain the search term.
+	 */
+	SUBSTRING("Name contains"),
+	/**
+	 * Match dances whose name or publications contain, for each word in the search
+	 * term, a word beginning with it.
+	 */
+	FULL_TEXT("Words in name or source"),
+	/**
+	 * Treat the search term as a {@link DanceQuery structured query}, like
+	 * "type:reel bars:32".
+	 */
+	QUERY("Query (e.g. type:reel bars:32)"),
+	/**
+	 * Match dances whose names have, for each word in the search term, a word spelled
+	 * nearly the same way, closest matches first.
+	 */
+	FUZZY("Name, allowing typos");
+
+	/**
+	 * A description of this mode, suitable for the user.
+	 */
+	private final String description;
+
+	SearchMode(final String description) {
+		this.description = description;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
@@ -0,0 +1,187 @@
+package lovelace.tartan.db;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * An inverted index from each three-character sequence ("trigram") to the ordinals of
+ * the strings containing it, to find the strings containing a search term without
+ * examining every one of them. Any string containing the term must contain all of the
+ * term's trigrams, so the candidates are the intersection of those trigrams' posting
+ * lists; candidates are then checked against the term itself.
+ *
+ * @author Jonathan Lovelace
+ */
+final class TrigramIndex {
+	/**
+	 * The strings we index, which callers are expected to have normalized, stored end
+	 * to end in a single array.
+	 */
+	private final char[] keys;
+	/**
+	 * The index in {@link #keys} where each key starts, followed by the length of that
+	 * array.
+	 */
+	private final int[] keyOffsets;
+	/**
+	 * Every trigram occurring in any key, packed into a long, in ascending order.
+	 */
+	private final long[] trigrams;
+	/**
+	 * For each trigram in {@link #trigrams}, the ordinals of the keys containing it, in
+	 * ascending order.
+	 */
+	private final int[][] postings;
+
+	private static long trigramAt(final CharSequence string, final int index) {
+		return ((long) string.charAt(index) << 32) |
+				       ((long) string.charAt(index + 1) << 16) |
+				       string.charAt(index + 2);
+	}
+
+	/**
+	 * @return the distinct trigrams in the given string, in ascending order
+	 */
+	private static long[] trigramsOf(final CharSequence string) {
+		final int count = string.length() - 2;
+		if (count <= 0) {
+			return new long[0];
+		}
+		final long[] retval = new long[count];
+		for (int i = 0; i < count; i++) {
+			retval[i] = trigramAt(string, i);
+		}
+		Arrays.sort(retval);
+		int distinct = 1;
+		for (int i = 1; i < count; i++) {
+			if (retval[i] != retval[distinct - 1]) {
+				retval[distinct] = retval[i];
+				distinct++;
+			}
+		}
+		return Arrays.copyOf(retval, distinct);
+	}
+
+	/**
+	 * @param keys the (normalized) strings to index; their positions in this list are
+	 *             the ordinals searches return
+	 */
+	TrigramIndex(final List<String> keys) {
+		keyOffsets = new int[keys.size() + 1];
+		for (int ordinal = 0; ordinal < keys.size(); ordinal++) {
+			keyOffsets[ordinal + 1] = keyOffsets[ordinal] + keys.get(ordinal).length();
+		}
+		this.keys = new char[keyOffsets[keys.size()]];
+		for (int ordinal = 0; ordinal < keys.size(); ordinal++) {
+			keys.get(ordinal).getChars(0, keys.get(ordinal).length(), this.keys,
+					keyOffsets[ordinal]);
+		}
+		final Map<Long, PostingBuilder> builders = new HashMap<>();
+		for (int ordinal = 0; ordinal < keys.size(); ordinal++) {
+			for (final long trigram : trigramsOf(keys.get(ordinal))) {
+				builders.computeIfAbsent(trigram, ignored -> new PostingBuilder())
+						.add(ordinal);
+			}
+		}
+		trigrams = builders.keySet().stream().mapToLong(Long::longValue).sorted()
+				           .toArray();
+		postings = new int[trigrams.length][];
+		for (int i = 0; i < trigrams.length; i++) {
+			postings[i] = builders.get(trigrams[i]).toArray();
+		}
+	}
+
+	/**
+	 * @return the intersection of two ascending arrays of ordinals
+	 */
+	private static int[] intersect(final int[] first, final int[] second) {
+		final int[] retval = new int[Math.min(first.length, second.length)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < first.length && j < second.length) {
+			if (first[i] < second[j]) {
+				i++;
+			} else if (first[i] > second[j]) {
+				j++;
+			} else {
+				retval[size] = first[i];
+				size++;
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(retval, size);
+	}
+
+	/**
+	 * @return whether the key with the given ordinal contains the given term
+	 */
+	private boolean keyContains(final int ordinal, final String term) {
+		final int length = term.length();
+		final int last = keyOffsets[ordinal + 1] - length;
+		for (int start = keyOffsets[ordinal]; start <= last; start++) {
+			int i = 0;
+			while (i < length && keys[start + i] == term.charAt(i)) {
+				i++;
+			}
+			if (i == length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the keys containing the given term. Terms shorter than a trigram can't use
+	 * the index, and are checked against every key.
+	 *
+	 * @param term the (normalized) term to search for
+	 * @return the ordinals of the keys containing it, in ascending order
+	 */
+	int[] search(final String term) {
+		final long[] termTrigrams = trigramsOf(term);
+		final int @Nullable [] candidates;
+		if (termTrigrams.length == 0) {
+			candidates = null;
+		} else {
+			final int[][] lists = new int[termTrigrams.length][];
+			for (int i = 0; i < termTrigrams.length; i++) {
+				final int position = Arrays.binarySearch(trigrams, termTrigrams[i]);
+				if (position < 0) {
+					return new int[0];
+				}
+				lists[i] = postings[position];
+			}
+			// Intersecting the shortest lists first keeps intermediate results small.
+			Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+			int[] intersection = lists[0];
+			for (int i = 1; i < lists.length && intersection.length > 0; i++) {
+				intersection = intersect(intersection, lists[i]);
+			}
+			candidates = intersection;
+		}
+		final int keyCount = keyOffsets.length - 1;
+		final int count = (candidates == null) ? keyCount : candidates.length;
+		final int[] retval = new int[count];
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			final int ordinal = (candidates == null) ? i : candidates[i];
+			if (keyContains(ordinal, term)) {
+				retval[size] = ordinal;
+				size++;
+			}
+		}
+		return Arrays.copyOf(retval, size);
+	}
+
+	@Override
+	public String toString() {
+		return "TrigramIndex of %d trigrams over %d keys".formatted(trigrams.length,
+				keyOffsets.length - 1);
+	}
+}
@@ -44,8 +44,15 @@ public final class DanceDetailsPanel extends JPanel {
 
 	private Runnable apply = this::noop;
 
-	private final JButton applyButton =
-			new ListenedButton("Apply", (ignored) -> apply.run());
+	/**
+	 * Told after changes are applied to the current element.
+	 */
+	private Runnable applyListener = this::noop;
+
+	private final JButton applyButton = new ListenedButton("Apply", (ignored) -> {
+		apply.run();
+		applyListener.run();
+	});
 	private final JButton revertButton =
 			new ListenedButton("Revert", (ignored) -> revert.run());
 
@@ -118,6 +125,13 @@ public final class DanceDetailsPanel extends JPanel {
 		return current;
 	}
 
+	/**
+	 * Set what to tell after the user applies changes to the current element.
+	 */
+	public void setApplyListener(final Runnable listener) {
+		applyListener = listener;
+	}
+
 	private static void enableFields(final JComponent... fields) {
 		for (final JComponent field : fields) {
 			field.setEnabled(true);
@@ -1,15 +1,27 @@
 package lovelace.tartan.gui;
 
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 import lovelace.tartan.db.DanceDatabase;
 import lovelace.tartan.db.DanceRow;
+import lovelace.tartan.db.FacetValue;
+import lovelace.tartan.db.FacetedResults;
+import lovelace.tartan.db.SearchMode;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -18,55 +30,268 @@ import org.jspecify.annotations.Nullable;
  * @author Jonathan Lovelace
  */
 public final class DanceSearchResultsListModel implements ListModel<DanceRow> {
-	private final DanceDatabase db;
+	/**
+	 * The database, or null if it has not finished loading yet.
+	 */
+	private @Nullable DanceDatabase db = null;
 	private final Collection<ListDataListener> listeners = new ArrayList<>(10);
-	private final List<DanceRow> backing;
+	/**
+	 * The rows shown, or while an update is being applied, the rows being replaced.
+	 */
+	private List<DanceRow> backing = List.of();
+	/**
+	 * The position in the database's catalogue of each row in {@link #backing}.
+	 */
+	private int[] ordinals = new int[0];
+	/**
+	 * While an update is being applied, the rows replacing {@link #backing}; otherwise
+	 * null. Changes are announced to listeners one interval at a time, and between
+	 * announcements the model consists of the first {@link #incomingDone} of these
+	 * followed by {@link #backing} from {@link #backingStart} on.
+	 */
+	private @Nullable List<DanceRow> incoming = null;
+	private int incomingDone = 0;
+	private int backingStart = 0;
 	private @Nullable String currentSearch = null;
+	private SearchMode currentMode = SearchMode.SUBSTRING;
+	private Set<FacetValue> currentFacets = Set.of();
+	/**
+	 * Told, on the EDT, how many dances each facet value would match whenever the
+	 * results change.
+	 */
+	private Consumer<Map<FacetValue, Integer>> countsListener = counts -> {};
+	/**
+	 * Told, on the EDT, why the latest search term could not be parsed as a structured
+	 * query, or null if it could (or wasn't one), whenever the results change.
+	 */
+	private Consumer<@Nullable ParseException> queryErrorListener = error -> {};
 
-	public DanceSearchResultsListModel(final DanceDatabase db) {
+	/**
+	 * The thread on which searches are run, so as not to block the EDT.
+	 */
+	private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(
+			Thread.ofVirtual().name("Dance search").factory());
+	/**
+	 * The search submitted most recently, which may not have finished yet.
+	 */
+	private @Nullable Future<?> pendingSearch = null;
+	/**
+	 * Incremented for each search, so that results of a search overtaken by a later
+	 * one are not shown. Only accessed on the EDT.
+	 */
+	private long generation = 0;
+
+	/**
+	 * Start using the given database, once it has loaded, showing the results of the
+	 * most recent search (or all of its dances if there was none).
+	 */
+	public void setDatabase(final DanceDatabase db) {
 		this.db = db;
-		backing = new ArrayList<>(db.getDances());
+		startSearch(db);
+	}
+
+	/**
+	 * Set what to tell how many dances each facet value would match whenever the
+	 * results change.
+	 */
+	public void setCountsListener(final Consumer<Map<FacetValue, Integer>> listener) {
+		countsListener = listener;
+	}
+
+	/**
+	 * Set what to tell, whenever the results change, why the search term could not be
+	 * parsed as a structured query, or null if it could.
+	 */
+	public void setQueryErrorListener(final Consumer<@Nullable ParseException> listener) {
+		queryErrorListener = listener;
 	}
 
-	public void search(final @Nullable String term) {
-		if (Objects.equals(term, currentSearch)) {
+	/**
+	 * Search for the given term, narrowed to the given facet values. This must be
+	 * called on the EDT; the search itself runs in the background, and the model is
+	 * updated on the EDT once it finishes, unless another search has been started by
+	 * then.
+	 */
+	public void search(final @Nullable String term, final SearchMode mode,
+	                   final Set<FacetValue> facets) {
+		if (Objects.equals(term, currentSearch) && (term == null || mode == currentMode)
+				&& facets.equals(currentFacets)) {
 			return;
 		}
+		currentMode = mode;
+		currentSearch = term;
+		currentFacets = Set.copyOf(facets);
+		if (db != null) {
+			startSearch(db);
+		}
+	}
+
+	private void startSearch(final DanceDatabase db) {
+		if (pendingSearch != null) {
+			pendingSearch.cancel(true);
+			pendingSearch = null;
+		}
+		generation++;
+		final String term = currentSearch;
+		final SearchMode mode = currentMode;
+		final Set<FacetValue> facets = currentFacets;
 		if (term == null) {
-			currentSearch = null;
-			final ListDataEvent removeEvent =
-					new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, 0,
-							backing.size() - 1);
-			backing.clear();
-			fireRemovalEvent(removeEvent);
-			backing.addAll(db.getDances());
-			fireInsertionEvent(new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, 0,
-					backing.size() - 1));
-		} else {
-			currentSearch = term;
-			final ListDataEvent removeEvent =
-					new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, 0,
-							Integer.max(0, backing.size() - 1));
-			backing.clear();
-			fireRemovalEvent(removeEvent);
-			final String lowered = term.toLowerCase(Locale.getDefault());
-			db.getDances().stream()
-					.filter((dance) -> dance.name().toLowerCase(Locale.getDefault())
-						.contains(lowered))
-					.forEach(backing::add);
-			fireInsertionEvent(new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, 0,
-					Integer.max(0, backing.size() - 1)));
+			// Narrowing by facets alone is only a few set operations, so is done here.
+			final FacetedResults results = db.search(null, mode, facets);
+			showResults(results, ordinalsOf(db, results.dances()));
+			return;
+		}
+		final long thisSearch = generation;
+		pendingSearch = searchExecutor.submit(() -> {
+			final FacetedResults results = db.search(term, mode, facets);
+			final int[] resultOrdinals = ordinalsOf(db, results.dances());
+			if (!Thread.currentThread().isInterrupted()) {
+				SwingUtilities.invokeLater(() -> {
+					if (generation == thisSearch) {
+						pendingSearch = null;
+						showResults(results, resultOrdinals);
+					}
+				});
+			}
+		});
+	}
+
+	private void showResults(final FacetedResults results, final int[] resultOrdinals) {
+		replaceContents(results.dances(), resultOrdinals);
+		countsListener.accept(results.counts());
+		queryErrorListener.accept(results.queryError());
+	}
+
+	private static int[] ordinalsOf(final DanceDatabase db, final List<DanceRow> rows) {
+		final int[] retval = new int[rows.size()];
+		for (int i = 0; i < retval.length; i++) {
+			retval[i] = db.ordinalOf(rows.get(i));
+		}
+		return retval;
+	}
+
+	/**
+	 * Choose which rows can stay where they are when the results change: as many as
+	 * possible of the rows in both the old and the new results, such that they are in
+	 * the same order in both. This is a longest increasing subsequence of the new
+	 * positions of the old rows, found by patience sorting.
+	 *
+	 * @param oldOrdinals the ordinals of the rows shown now
+	 * @param newOrdinals the ordinals of the rows to be shown
+	 * @param keptOld     set to the positions in the old rows of the rows kept
+	 * @param keptNew     set to the positions in the new rows of the rows kept
+	 */
+	private static void chooseKept(final int[] oldOrdinals, final int[] newOrdinals,
+	                               final BitSet keptOld, final BitSet keptNew) {
+		final Map<Integer, Integer> newPositions = new HashMap<>(newOrdinals.length * 2);
+		for (int i = 0; i < newOrdinals.length; i++) {
+			if (newOrdinals[i] >= 0) {
+				newPositions.putIfAbsent(newOrdinals[i], i);
+			}
+		}
+		// For each length of subsequence found so far, the old position of the row
+		// ending the one whose last new position is smallest.
+		final int[] tails = new int[oldOrdinals.length];
+		// For each old row in a subsequence, the old position of the row before it.
+		final int[] previous = new int[oldOrdinals.length];
+		final int[] target = new int[oldOrdinals.length];
+		int length = 0;
+		for (int i = 0; i < oldOrdinals.length; i++) {
+			final Integer position = newPositions.get(oldOrdinals[i]);
+			if (position == null) {
+				continue;
+			}
+			target[i] = position;
+			int low = 0;
+			int high = length;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (target[tails[middle]] < position) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			previous[i] = (low > 0) ? tails[low - 1] : -1;
+			tails[low] = i;
+			if (low == length) {
+				length++;
+			}
+		}
+		for (int i = (length > 0) ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+			keptOld.set(i);
+			keptNew.set(target[i]);
+		}
+	}
+
+	/**
+	 * Replace the rows shown, telling listeners only about the rows that were actually
+	 * removed or added, so that the list can keep its selection and layout for the
+	 * rest. Rows that moved relative to the others are removed from their old place
+	 * and added in their new one.
+	 */
+	private void replaceContents(final List<DanceRow> results, final int[] newOrdinals) {
+		final BitSet keptOld = new BitSet(ordinals.length);
+		final BitSet keptNew = new BitSet(newOrdinals.length);
+		chooseKept(ordinals, newOrdinals, keptOld, keptNew);
+		incoming = results;
+		incomingDone = 0;
+		backingStart = 0;
+		try {
+			mergeContents(newOrdinals.length, keptOld, keptNew);
+		} finally {
+			backing = results;
+			ordinals = newOrdinals;
+			incoming = null;
+			incomingDone = 0;
+			backingStart = 0;
+		}
+	}
+
+	/**
+	 * Walk the old and new rows together, announcing each run of old rows not kept as
+	 * a removal, and each run of new rows not kept as an addition. The kept rows are
+	 * the same, in the same order, in both.
+	 */
+	private void mergeContents(final int newCount, final BitSet keptOld,
+	                           final BitSet keptNew) {
+		final int oldCount = ordinals.length;
+		while (backingStart < oldCount || incomingDone < newCount) {
+			if (backingStart < oldCount && !keptOld.get(backingStart)) {
+				final int start = backingStart;
+				final int next = keptOld.nextSetBit(backingStart);
+				backingStart = (next < 0) ? oldCount : next;
+				fireRemoval(incomingDone, backingStart - start);
+			} else if (incomingDone < newCount && !keptNew.get(incomingDone)) {
+				final int start = incomingDone;
+				final int next = keptNew.nextSetBit(incomingDone);
+				incomingDone = (next < 0) ? newCount : next;
+				fireInsertion(start, incomingDone - start);
+			} else {
+				backingStart++;
+				incomingDone++;
+			}
 		}
 	}
 
 	@Override
 	public int getSize() {
-		return backing.size();
+		if (incoming == null) {
+			return backing.size();
+		} else {
+			return incomingDone + backing.size() - backingStart;
+		}
 	}
 
 	@Override
 	public DanceRow getElementAt(final int index) {
-		return backing.get(index);
+		if (incoming == null) {
+			return backing.get(index);
+		} else if (index < incomingDone) {
+			return incoming.get(index);
+		} else {
+			return backing.get(backingStart + index - incomingDone);
+		}
 	}
 
 	@Override
@@ -79,20 +304,28 @@ public final class DanceSearchResultsListModel implements ListModel<DanceRow> {
 		listeners.remove(listener);
 	}
 
-	private void fireRemovalEvent(final ListDataEvent event) {
-		for (final ListDataListener listener : listeners) {
-			listener.intervalRemoved(event);
+	private void fireRemoval(final int index, final int count) {
+		if (count > 0) {
+			final ListDataEvent event = new ListDataEvent(this,
+					ListDataEvent.INTERVAL_REMOVED, index, index + count - 1);
+			for (final ListDataListener listener : listeners) {
+				listener.intervalRemoved(event);
+			}
 		}
 	}
 
-	private void fireInsertionEvent(final ListDataEvent event) {
-		for (final ListDataListener listener : listeners) {
-			listener.intervalAdded(event);
+	private void fireInsertion(final int index, final int count) {
+		if (count > 0) {
+			final ListDataEvent event = new ListDataEvent(this,
+					ListDataEvent.INTERVAL_ADDED, index, index + count - 1);
+			for (final ListDataListener listener : listeners) {
+				listener.intervalAdded(event);
+			}
 		}
 	}
 
 	@Override
 	public String toString() {
-		return "DDanceSearchResultsListModel showing %d rows".formatted(backing.size());
+		return "DanceSearchResultsListModel showing %d rows".formatted(getSize());
 	}
 }
@@ -1,5 +1,7 @@
 package lovelace.tartan.gui;
 
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyAdapter;
@@ -7,17 +9,40 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.IOException;
+import java.text.ParseException;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.DropMode;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JList;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.SwingConstants;
+import javax.swing.Timer;
+import javax.swing.border.Border;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import lovelace.tartan.db.DanceDatabase;
 import lovelace.tartan.db.DanceRow;
 import lovelace.tartan.db.DatabaseAdapter;
+import lovelace.tartan.db.Facet;
+import lovelace.tartan.db.FacetValue;
+import lovelace.tartan.db.SearchMode;
 import lovelace.tartan.gui.controls.BorderedPanel;
 import lovelace.tartan.gui.controls.BoxPanel;
 import lovelace.tartan.gui.controls.BoxPanel.BoxDirection;
@@ -39,36 +64,145 @@ public final class DanceSelectionPanel extends JSplitPane {
 	private final DanceSearchResultsListModel danceListModel;
 	private final JList<@Nullable DanceRow> danceList;
 	private final JTextField filterField = new JTextField(15);
+	/**
+	 * The search field's own border, shown while its text is not a malformed query.
+	 */
+	private final Border filterBorder = filterField.getBorder();
+	/**
+	 * The search field's border while its text is a malformed query.
+	 */
+	private final Border invalidFilterBorder = BorderFactory.createCompoundBorder(
+			BorderFactory.createLineBorder(Color.RED), filterBorder);
+	private final JComboBox<SearchMode> searchModeBox =
+			new JComboBox<>(SearchMode.values());
 	private final JList<ProgramElement> selectedList;
 	private final ReorderableListModel<ProgramElement> program;
-	private final DanceDatabase db;
+	private final ProgramTitleIndex programTitles;
+	/**
+	 * The database, or null if it has not finished loading yet.
+	 */
+	private @Nullable DanceDatabase db = null;
+	/**
+	 * Shown in place of the list of dances until the database has loaded.
+	 */
+	private final JLabel loadingLabel =
+			new JLabel("Loading dance database...", SwingConstants.CENTER);
+	private final JScrollPane danceScrollPane;
+	/**
+	 * A drop-down for each facet the search can be narrowed by, added once the
+	 * database has loaded. Null in one means any value of that facet.
+	 */
+	private final Map<Facet, JComboBox<@Nullable FacetValue>> facetBoxes =
+			new EnumMap<>(Facet.class);
+	private final JPanel facetPanel = new BoxPanel(BoxDirection.LineAxis);
+	/**
+	 * How many dances each facet value would match, as of the latest results.
+	 */
+	private Map<FacetValue, Integer> facetCounts = Map.of();
+	/**
+	 * How long, in milliseconds, to wait after the user stops typing before searching.
+	 */
+	private static final int SEARCH_DELAY = 200;
+	/**
+	 * Runs the search once the user pauses typing, so that we don't search after every
+	 * keystroke.
+	 */
+	private final Timer searchTimer = new Timer(SEARCH_DELAY, this::filterDanceList);
 
 	private void filterDanceList(final ActionEvent ignored) {
+		searchTimer.stop();
 		final String search = filterField.getText().trim();
+		final SearchMode mode = (SearchMode) searchModeBox.getSelectedItem();
+		final Set<FacetValue> facets = facetBoxes.values().stream()
+				.map(JComboBox::getSelectedItem).filter(FacetValue.class::isInstance)
+				.map(FacetValue.class::cast).collect(Collectors.toSet());
 		if (search.isEmpty()) {
-			danceListModel.search(null);
+			danceListModel.search(null, mode, facets);
 		} else {
-			danceListModel.search(search);
+			danceListModel.search(search, mode, facets);
 		}
 		danceList.repaint();
 	}
 
+	private void showFacetCounts(final Map<FacetValue, Integer> counts) {
+		facetCounts = counts;
+		facetBoxes.values().forEach(JComboBox::repaint);
+	}
+
+	/**
+	 * Mark the search field as invalid, with a tooltip saying what is wrong and where,
+	 * if the search was a structured query that could not be parsed; otherwise clear
+	 * any such mark.
+	 */
+	private void showQueryError(final @Nullable ParseException error) {
+		if (error == null) {
+			filterField.setBorder(filterBorder);
+			filterField.setToolTipText(null);
+		} else {
+			// The query was trimmed before it was parsed.
+			final String text = filterField.getText();
+			final int leading = text.length() - text.stripLeading().length();
+			filterField.setBorder(invalidFilterBorder);
+			filterField.setToolTipText("Invalid query: %s at character %d".formatted(
+					error.getMessage(), leading + error.getErrorOffset() + 1));
+		}
+	}
+
+	/**
+	 * Add the dances selected in the search results to the program, before the
+	 * selected program element if any, skipping any with the same title as one already
+	 * in the program (or earlier in the selection). For a dance published in more than
+	 * one place, the user is asked which publication to cite. Their cribs are fetched
+	 * from the database together.
+	 */
 	private void addDance() {
-		final DanceRow selection = danceList.getSelectedValue();
-		if (selection != null && program.stream().filter(Dance.class::isInstance)
-				.map(Dance.class::cast).map(Dance::getTitle)
-				.noneMatch(selection.name()::equals)) {
-			final Dance dance =
-					DatabaseAdapter.convertDance(selection, db.cribText(selection));
-			final int target = selectedList.getSelectedIndex();
+		final Set<String> chosen = new HashSet<>();
+		final List<DanceRow> selection = danceList.getSelectedValuesList().stream()
+				.filter(Objects::nonNull)
+				.filter(row -> !programTitles.containsTitle(row.name()))
+				.filter(row -> chosen.add(row.name()))
+				.toList();
+		if (selection.isEmpty() || db == null) {
+			return;
+		}
+		final Map<DanceRow, String> sources = new LinkedHashMap<>();
+		for (final DanceRow row : selection) {
+			final String source = choosePublication(row);
+			if (source != null) {
+				sources.put(row, source);
+			}
+		}
+		final Map<Integer, String> cribs = db.cribTexts(sources.keySet());
+		int target = selectedList.getSelectedIndex();
+		for (final Map.Entry<DanceRow, String> entry : sources.entrySet()) {
+			final DanceRow row = entry.getKey();
+			final Dance dance = DatabaseAdapter.convertDance(row, entry.getValue(),
+					cribs.get(row.id()));
 			if (target >= 0) {
 				program.add(target, dance);
+				target++;
 			} else {
 				program.add(dance);
 			}
 		}
 	}
 
+	/**
+	 * @return the publication of the given dance the user wants the program to cite,
+	 * asking if there is more than one, or null if the user cancels
+	 */
+	private @Nullable String choosePublication(final DanceRow row) {
+		final List<String> sources = row.sources();
+		if (sources.size() == 1) {
+			return sources.getFirst();
+		}
+		return (String) JOptionPane.showInputDialog(this,
+				"\"%s\" was published in more than one place. Which should be cited?"
+						.formatted(row.name()), "Choose Publication",
+				JOptionPane.QUESTION_MESSAGE, null, sources.toArray(),
+				sources.getFirst());
+	}
+
 	@SuppressWarnings("MagicNumber")
 	private static JPanel createButtonPanel(final JButton rightButton,
 	                                        final JButton leftButton) {
@@ -98,11 +232,10 @@ public final class DanceSelectionPanel extends JSplitPane {
 	}
 
 	@SuppressWarnings("HardcodedFileSeparator") // '/' is cross-platform in Java!
-	public DanceSelectionPanel(final DanceDatabase db,
-							   final ReorderableListModel<ProgramElement> program) {
+	public DanceSelectionPanel(final ReorderableListModel<ProgramElement> program) {
 		super(JSplitPane.HORIZONTAL_SPLIT, true);
 		this.program = program;
-		this.db = db;
+		programTitles = new ProgramTitleIndex(program);
 		// TODO: Check image paths
 		final JButton rightButton =
 				optionalImageButton("lovelace/tartan/gui/arrow-right-300px.png", "Add");
@@ -111,15 +244,22 @@ public final class DanceSelectionPanel extends JSplitPane {
 				"lovelace/tartan/gui/arrow-left-300px.png", "Add");
 		final JPanel inner = createButtonPanel(rightButton, leftButton);
 
-		danceListModel = new DanceSearchResultsListModel(db);
+		danceListModel = new DanceSearchResultsListModel();
 		danceList = new JList<>(danceListModel);
+		danceScrollPane = new JScrollPane(loadingLabel);
 
-		final JPanel filterPanel = BorderedPanel.horizontalLine(null, filterField,
-				new ListenedButton("Search", this::filterDanceList));
-		final JPanel left =
-				BorderedPanel.verticalLine(filterPanel, new JScrollPane(danceList),
-						null);
+		final JPanel filterPanel = BorderedPanel.horizontalLine(searchModeBox,
+				filterField, new ListenedButton("Search", this::filterDanceList));
+		final JPanel left = BorderedPanel.verticalLine(
+				BorderedPanel.verticalLine(filterPanel, facetPanel, null),
+				danceScrollPane, null);
+		danceListModel.setCountsListener(this::showFacetCounts);
+		danceListModel.setQueryErrorListener(this::showQueryError);
 		filterField.addActionListener(this::filterDanceList);
+		searchTimer.setRepeats(false);
+		filterField.getDocument().addDocumentListener(
+				new DocumentChangeListener(searchTimer::restart));
+		searchModeBox.addActionListener(this::filterDanceList);
 		selectedList = new JList<>(program);
 		selectedList.setMinimumSize(new Dimension(400, 100));
 		selectedList.setTransferHandler(new ProgramElementTransferHandler());
@@ -147,6 +287,33 @@ public final class DanceSelectionPanel extends JSplitPane {
 		setResizeWeight(0.5);
 	}
 
+	/**
+	 * Start using the database once it has loaded, replacing the loading message with
+	 * the list of dances. Any search entered while it was loading is applied.
+	 */
+	public void setDatabase(final DanceDatabase db) {
+		this.db = db;
+		for (final Facet facet : Facet.values()) {
+			final JComboBox<@Nullable FacetValue> box = new JComboBox<>();
+			box.addItem(null);
+			db.facetValues(facet).forEach(box::addItem);
+			box.setRenderer(new FacetValueRenderer(facet));
+			box.addActionListener(this::filterDanceList);
+			facetBoxes.put(facet, box);
+			facetPanel.add(box);
+		}
+		facetPanel.revalidate();
+		danceListModel.setDatabase(db);
+		danceScrollPane.setViewportView(danceList);
+	}
+
+	/**
+	 * Replace the loading message with one saying the database could not be loaded.
+	 */
+	public void showLoadFailure(final String message) {
+		loadingLabel.setText(message);
+	}
+
 	private static final class EnterKeyListener extends KeyAdapter {
 		private final Runnable method;
 		private EnterKeyListener(final Runnable method) {
@@ -165,6 +332,64 @@ public final class DanceSelectionPanel extends JSplitPane {
 		}
 	}
 
+	private static final class DocumentChangeListener implements DocumentListener {
+		private final Runnable method;
+		private DocumentChangeListener(final Runnable method) {
+			this.method = method;
+		}
+		@Override
+		public void insertUpdate(final DocumentEvent evt) {
+			method.run();
+		}
+
+		@Override
+		public void removeUpdate(final DocumentEvent evt) {
+			method.run();
+		}
+
+		@Override
+		public void changedUpdate(final DocumentEvent evt) {
+			// Attribute changes don't change the search term.
+		}
+
+		@Override
+		public String toString() {
+			return "DocumentChangeListener";
+		}
+	}
+
+	/**
+	 * Shows each value of a facet with how many dances it would match.
+	 */
+	private final class FacetValueRenderer
+			implements ListCellRenderer<@Nullable FacetValue> {
+		private final DefaultListCellRenderer delegate = new DefaultListCellRenderer();
+		private final Facet facet;
+		private FacetValueRenderer(final Facet facet) {
+			this.facet = facet;
+		}
+		@Override
+		public Component getListCellRendererComponent(
+				final JList<? extends @Nullable FacetValue> list,
+				final @Nullable FacetValue value, final int index,
+				final boolean isSelected, final boolean cellHasFocus) {
+			final String text;
+			if (value == null) {
+				text = "Any " + facet.toString().toLowerCase(Locale.ROOT);
+			} else {
+				text = "%s (%d)".formatted(value.label(),
+						facetCounts.getOrDefault(value, 0));
+			}
+			return delegate.getListCellRendererComponent(list, text, index, isSelected,
+					cellHasFocus);
+		}
+
+		@Override
+		public String toString() {
+			return "FacetValueRenderer for " + facet;
+		}
+	}
+
 	private static final class DoubleClickListener extends MouseAdapter {
 		private final Runnable method;
 		private DoubleClickListener(final Runnable method) {
@@ -3,8 +3,12 @@ package lovelace.tartan.gui;
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.IntStream;
 import javax.swing.DropMode;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
@@ -24,6 +28,9 @@ import org.jspecify.annotations.Nullable;
  * @author Jonathan Lovelace
  */
 public final class ElementEditingPanel extends JPanel {
+	private static final Logger LOGGER =
+			Logger.getLogger(ElementEditingPanel.class.getName());
+
 	private @Nullable ProgramElement current = null;
 
 	private SingleColumnTableModel<DanceMember> tableModel =
@@ -37,6 +44,14 @@ public final class ElementEditingPanel extends JPanel {
 		return current;
 	}
 
+	/**
+	 * Set what to tell after the user applies changes to the current element's
+	 * details, such as its title.
+	 */
+	public void setApplyListener(final Runnable listener) {
+		detailsPanel.setApplyListener(listener);
+	}
+
 	private void fixHeights(final @Nullable Object ignored) {
 		for (int row = 0; row < table.getRowCount(); row++) {
 			final Component renderer =
@@ -49,13 +64,33 @@ public final class ElementEditingPanel extends JPanel {
 		}
 	}
 
+	/**
+	 * @return the figures of the given element if it is a dance, or null if it isn't or
+	 * if they could not be read from the file it came from
+	 */
+	private @Nullable List<DanceMember> figuresOf(
+			final @Nullable ProgramElement element) {
+		if (element instanceof final Dance dance) {
+			try {
+				return dance.getContents();
+			} catch (final IllegalStateException except) {
+				LOGGER.log(Level.SEVERE, "Couldn't read the figures of a dance", except);
+				JOptionPane.showMessageDialog(this,
+						("The directions for %s could not be read; they will be saved " +
+								 "as they are in the file").formatted(dance.getTitle()),
+						"Error Reading LaTeX Program", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		return null;
+	}
+
 	public void setCurrent(final @Nullable ProgramElement current) {
 		this.current = current;
 		detailsPanel.setCurrent(current);
-		if (current instanceof final Dance dance) {
+		final @Nullable List<DanceMember> contents = figuresOf(current);
+		if (contents != null) {
 			final SingleColumnTableModel<DanceMember> model =
-					new SingleColumnTableModel<>(
-							dance.getContents(), DanceMember.class,
+					new SingleColumnTableModel<>(contents, DanceMember.class,
 							"Directions");
 			model.addTableModelListener(this::fixHeights);
 			tableModel = model;
@@ -12,6 +12,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.DropMode;
@@ -24,6 +26,7 @@ import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.ListModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import lovelace.tartan.db.DanceDatabase;
@@ -64,13 +67,29 @@ public final class ProgramEditingWindow extends JFrame {
 		selectedList.addListSelectionListener(
 				ignored -> eep.setCurrent(getSelection(program,
 						selectedList.getSelectedIndex())));
+		// Replacing the element with itself tells the list, and anything else
+		// listening to the program, that it has changed.
+		eep.setApplyListener(() -> {
+			final int index = selectedList.getSelectedIndex();
+			if (index >= 0 && index < program.size() &&
+					    program.get(index) == eep.getCurrent()) {
+				program.set(index, program.get(index));
+			}
+		});
 		final JSplitPane retval =
 				new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, true, selectedList, eep);
 		retval.setResizeWeight(0.5);
 		return retval;
 	}
 
-	public ProgramEditingWindow(final DanceDatabase db,
+	/**
+	 * @param database the dance database, which may still be loading; the window is
+	 *                 usable in the meantime, and the dance list fills in once it is
+	 *                 ready
+	 * @param metadata the program's metadata
+	 * @param program  the program's initial contents
+	 */
+	public ProgramEditingWindow(final CompletionStage<DanceDatabase> database,
 								final ProgramMetadata metadata,
 								final List<ProgramElement> program) {
 		super("Dance Program Editor");
@@ -81,7 +100,7 @@ public final class ProgramEditingWindow extends JFrame {
 		final JTabbedPane pane =
 				new JTabbedPane(SwingConstants.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);
 		setContentPane(pane);
-		final DanceSelectionPanel dsp = new DanceSelectionPanel(db, programModel);
+		final DanceSelectionPanel dsp = new DanceSelectionPanel(programModel);
 		pane.add("Select Dances", dsp);
 		final JComponent pep = programEditingPanel(programModel);
 		pane.add("Edit Selected Dances", pep);
@@ -101,8 +120,35 @@ public final class ProgramEditingWindow extends JFrame {
 		} else if (!TartanMenu.isOnMac()) {
 			setJMenuBar(menuBar);
 		}
+		database.whenComplete((db, except) -> SwingUtilities.invokeLater(() -> {
+			if (except == null) {
+				dsp.setDatabase(db);
+			} else {
+				dsp.showLoadFailure("Dance database could not be loaded");
+			}
+		}));
+	}
+
+	/**
+	 * Start opening the database in the background.
+	 */
+	private static CompletableFuture<DanceDatabase> openDatabase(final Path file) {
+		final CompletableFuture<DanceDatabase> retval = new CompletableFuture<>();
+		Thread.ofVirtual().name("Dance database loader").start(() -> {
+			try {
+				retval.complete(new DanceDatabase(file));
+			} catch (final SQLException | RuntimeException except) {
+				LOGGER.log(Level.SEVERE, "Error opening SQLite database", except);
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null,
+						"Error trying to open %s as SQLite database".formatted(
+								file.getFileName()), "Error Opening Database",
+						JOptionPane.ERROR_MESSAGE));
+				retval.completeExceptionally(except);
+			}
+		});
+		return retval;
 	}
-	private static DanceDatabase initializeDatabaseNoArgs() {
+	private static Path chooseDatabaseNoArgs() {
 		final PlatformFileDialog chooser = new PlatformFileDialog(null);
 		final FilenameFilter filter =
 				(dir, name) -> name.endsWith(".db") || name.endsWith(".sqlite") ||
@@ -123,48 +169,20 @@ public final class ProgramEditingWindow extends JFrame {
 			System.exit(0);
 			throw new IllegalStateException("Returned from System.exit()");
 		} else {
-			try {
-				return new DanceDatabase(file.toPath());
-			} catch (final SQLException except) {
-				JOptionPane.showMessageDialog(null,
-						"Error trying to open %s as SQLite database".formatted(
-								file.getName()), "Error Opening Database",
-						JOptionPane.ERROR_MESSAGE);
-				LOGGER.log(Level.SEVERE, "Error opening SQLite database",
-						except);
-				System.exit(1);
-				// This is an impossible condition, that the compiler isn't smart enough
-				// to detect yet
-				//noinspection ThrowInsideCatchBlockWhichIgnoresCaughtException
-				throw new IllegalStateException("Returned from System.exit()"); // NOPMD
-			}
+			return file.toPath();
 		}
 	}
-	private static DanceDatabase initializeDatabaseFromArgs(final String... args) {
+	private static Path chooseDatabaseFromArgs(final String... args) {
 		final FilenameFilter filter =
 				(dir, name) -> name.endsWith(".db") || name.endsWith(".sqlite") ||
 						name.endsWith(".sqlite3");
 		for (final String arg : args) {
 			final Path file = Paths.get(arg);
 			if (file.toFile().canRead() && filter.accept(file.toFile(), arg)) {
-				try {
-					return new DanceDatabase(file);
-				} catch (final SQLException except) {
-					JOptionPane.showMessageDialog(null,
-							"Error trying to open %s as SQLite database".formatted(arg),
-							"Error Opening Database",
-							JOptionPane.ERROR_MESSAGE);
-					LOGGER.log(Level.SEVERE, "Error opening SQLite database",
-							except);
-					System.exit(1);
-					// This is an impossible condition, that the compiler isn't smart
-					// enough to detect yet
-					//noinspection ThrowInsideCatchBlockWhichIgnoresCaughtException
-					throw new IllegalStateException("Returned from System.exit()");
-				}
+				return file;
 			}
 		}
-		return initializeDatabaseNoArgs();
+		return chooseDatabaseNoArgs();
 	}
 
 	// Suppression of "access of system properties" is warranted, as setting these three
@@ -175,15 +193,13 @@ public final class ProgramEditingWindow extends JFrame {
 				"SCD Program Editor");
 		System.setProperty("apple.awt.application.name", "SCD Program Editor");
 		System.setProperty("apple.laf.useScreenMenuBar", "true");
-		final DanceDatabase db;
-		final FilenameFilter filter =
-				(dir, name) -> name.endsWith(".db") || name.endsWith(".sqlite") ||
-						name.endsWith(".sqlite3");
+		final Path dbFile;
 		if (args.length == 0) {
-			db = initializeDatabaseNoArgs();
+			dbFile = chooseDatabaseNoArgs();
 		} else {
-			db = initializeDatabaseFromArgs(args);
+			dbFile = chooseDatabaseFromArgs(args);
 		}
+		final CompletableFuture<DanceDatabase> db = openDatabase(dbFile);
 		// TODO: If a non-DB argument, read previously-written project from it
 		final ProgramMetadata metadata = new ProgramMetadata();
 		final List<ProgramElement> initialProgram = new ArrayList<>(args.length);
@@ -0,0 +1,113 @@
+package lovelace.tartan.gui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import lovelace.tartan.model.Dance;
+import lovelace.tartan.model.ProgramElement;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The titles of the dances in a program, kept up to date as the program changes, so
+ * that whether the program has a dance with a given title can be answered without
+ * examining every element. Titles are compared exactly, so dances whose names differ
+ * only in spelling, punctuation, or case, which are often different dances, are kept
+ * apart.
+ * <p>
+ * Changes to a dance's title are only noticed when the program's list model announces
+ * that element has changed.
+ *
+ * @author Jonathan Lovelace
+ */
+final class ProgramTitleIndex implements ListDataListener {
+	private final ListModel<ProgramElement> program;
+	/**
+	 * The title of each element of the program, or null for each element that isn't a
+	 * dance. This is kept in step with the program, so that we know which titles
+	 * elements being removed had.
+	 */
+	private final List<@Nullable String> keys = new ArrayList<>();
+	/**
+	 * How many dances in the program have each title.
+	 */
+	private final Map<String, Integer> counts = new HashMap<>();
+
+	ProgramTitleIndex(final ListModel<ProgramElement> program) {
+		this.program = program;
+		insert(0, program.getSize() - 1);
+		//noinspection ThisEscapedInObjectConstruction
+		program.addListDataListener(this);
+	}
+
+	private @Nullable String keyOf(final ProgramElement element) {
+		if (element instanceof final Dance dance) {
+			return dance.getTitle();
+		} else {
+			return null;
+		}
+	}
+
+	private void count(final @Nullable String key, final int change) {
+		if (key != null) {
+			counts.merge(key, change, (existing, delta) ->
+					(existing + delta == 0) ? null : existing + delta);
+		}
+	}
+
+	private void insert(final int first, final int last) {
+		for (int i = first; i <= last; i++) {
+			final String key = keyOf(program.getElementAt(i));
+			keys.add(i, key);
+			count(key, 1);
+		}
+	}
+
+	private void remove(final int first, final int last) {
+		for (int i = last; i >= first; i--) {
+			count(keys.remove(i), -1);
+		}
+	}
+
+	/**
+	 * @return whether the program has a dance with the given title
+	 */
+	boolean containsTitle(final String title) {
+		return counts.containsKey(title);
+	}
+
+	@Override
+	public void intervalAdded(final ListDataEvent evt) {
+		insert(evt.getIndex0(), evt.getIndex1());
+	}
+
+	@Override
+	public void intervalRemoved(final ListDataEvent evt) {
+		remove(evt.getIndex0(), evt.getIndex1());
+	}
+
+	@Override
+	public void contentsChanged(final ListDataEvent evt) {
+		if (evt.getIndex0() < 0 || evt.getIndex1() >= keys.size()) {
+			// The event doesn't say just what changed, so start over.
+			keys.clear();
+			counts.clear();
+			insert(0, program.getSize() - 1);
+		} else {
+			for (int i = evt.getIndex0(); i <= evt.getIndex1(); i++) {
+				count(keys.get(i), -1);
+				final String key = keyOf(program.getElementAt(i));
+				keys.set(i, key);
+				count(key, 1);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ProgramTitleIndex of %d dance titles".formatted(counts.size());
+	}
+}
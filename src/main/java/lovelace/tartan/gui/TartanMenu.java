@@ -121,16 +121,12 @@ public final class TartanMenu {
 			List<ProgramElement>>> readFromSpecifiedFile(
 			final Path file, final @Nullable Component parent) {
 		try {
-			final List<String> lines = Files.readAllLines(file);
-			// If a file is big enough that a StringBuilder of size Integer.MAX_VALUE
-			// isn't big enough, this isn't likely to be the bottleneck.
-			@SuppressWarnings("NumericCastThatLosesPrecision")
-			final StringBuilder builder = new StringBuilder((int) Files.size(file));
-			for (final String line : lines) {
-				builder.append(line);
-				builder.append(System.lineSeparator());
-			}
-			return Optional.of(new LaTeXReader().readLaTeXProgram(builder.toString()));
+			// Only each dance's details are parsed now, so the list of dances can be
+			// shown quickly; its figures are parsed when it is first selected. They are
+			// parsed from the text of the file, so unlike the streaming reader this
+			// needs the whole file in memory, until every dance has been opened.
+			return Optional.of(
+					new LaTeXReader().readLaTeXProgramLazily(Files.readString(file)));
 		} catch (final IOException | ParseException except) {
 			JOptionPane.showMessageDialog(null,
 					"Error trying to read LaTeX from %s".formatted(file),
@@ -51,17 +51,14 @@ public class ReorderableListModelImpl<Element> extends AbstractList<Element>
 	public void reorder(final int fromIndex, final int toIndex) {
 		if (fromIndex != toIndex) {
 			final Element item = wrapped.remove(fromIndex);
-			if (fromIndex > toIndex) {
-				wrapped.add(toIndex, item);
-			} else {
-				wrapped.add(toIndex - 1, item);
-			}
+			final int insertedAt = (fromIndex > toIndex) ? toIndex : toIndex - 1;
+			wrapped.add(insertedAt, item);
 			final ListDataEvent removedEvent =
 					new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, fromIndex,
 							fromIndex);
 			final ListDataEvent addedEvent =
-					new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, toIndex,
-							toIndex);
+					new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, insertedAt,
+							insertedAt);
 			for (final ListDataListener listener : listeners) {
 				listener.intervalRemoved(removedEvent);
 				listener.intervalAdded(addedEvent);
@@ -0,0 +1,70 @@
+package lovelace.tartan.latex;
+
+/**
+ * The contents of a curly-brace block, read in place from the input the block is part
+ * of, so that a construct like a named figure can be parsed without first copying its
+ * contents out. This appears empty once the brace closing the block is next, which it
+ * leaves for the caller to consume.
+ * <p>
+ * The closing brace is found the way {@link LaTeXReader#blockContents} would find it:
+ * every brace read counts, except one escaped with a backslash.
+ *
+ * @author Jonathan Lovelace
+ */
+final class BlockInput implements LaTeXInput {
+	/**
+	 * The input the block is part of.
+	 */
+	private final LaTeXInput outer;
+	/**
+	 * How many more opening braces than closing braces we have read.
+	 */
+	private int braceLevel = 0;
+	/**
+	 * Whether the last character read was an unescaped backslash.
+	 */
+	private boolean escaped = false;
+
+	/**
+	 * @param outer the input the block is part of, just past the block's opening brace
+	 */
+	BlockInput(final LaTeXInput outer) {
+		this.outer = outer;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return outer.isEmpty() || (braceLevel == 0 && !escaped && outer.peek() == '}');
+	}
+
+	@Override
+	public char peek() {
+		return outer.peek();
+	}
+
+	@Override
+	@SuppressWarnings("HardcodedFileSeparator") // backslash is not a file separator
+	public char pop() {
+		final char retval = outer.pop();
+		if (escaped) {
+			escaped = false;
+		} else if (retval == '\\') {
+			escaped = true;
+		} else if (retval == '{') {
+			braceLevel++;
+		} else if (retval == '}') {
+			braceLevel--;
+		}
+		return retval;
+	}
+
+	@Override
+	public int position() {
+		return outer.position();
+	}
+
+	@Override
+	public String toString() {
+		return "BlockInput at %d, %d braces deep".formatted(position(), braceLevel);
+	}
+}
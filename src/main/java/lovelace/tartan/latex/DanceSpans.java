@@ -0,0 +1,224 @@
+package lovelace.tartan.latex;
+
+import java.util.Arrays;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The spans of a LaTeX document taken up by its top-level {@code scdance}
+ * environments, from the backslash of each <pre>\begin{scdance}</pre> to just after
+ * the closing brace of its <pre>\end{scdance}</pre>, found by a quick scan that does
+ * not build any model objects. Each span can then be parsed independently of the rest
+ * of the document, which is what {@link LaTeXReader#readLaTeXProgramInParallel} does.
+ * <p>
+ * The scan follows the parser's rules for comments, braces, and optional arguments
+ * closely enough to tell where each dance begins and ends, but it does not otherwise
+ * check the document. Where it finds anything it isn't sure the parser would treat
+ * the same way, such as a dance that is never closed or an unfamiliar environment, it
+ * gives up, and the document should be parsed sequentially instead, so that any error
+ * is reported just as it would otherwise be.
+ *
+ * @author Jonathan Lovelace
+ */
+final class DanceSpans {
+	/**
+	 * The character {@link SkeletonCursor} returns in place of each span. This is a
+	 * Unicode noncharacter, and we refuse to split any document that contains it.
+	 */
+	static final char PLACEHOLDER = '\uFFFF';
+
+	/**
+	 * The index of the start of each span, in order.
+	 */
+	private final int[] starts;
+	/**
+	 * The index one past the end of each span.
+	 */
+	private final int[] ends;
+
+	private DanceSpans(final int[] starts, final int[] ends) {
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * @return how many spans there are
+	 */
+	int count() {
+		return starts.length;
+	}
+
+	/**
+	 * @return the index of the start of the given span
+	 */
+	int start(final int span) {
+		return starts[span];
+	}
+
+	/**
+	 * @return the index one past the end of the given span
+	 */
+	int end(final int span) {
+		return ends[span];
+	}
+
+	@SuppressWarnings("HardcodedLineSeparator")
+	private static boolean isLinebreak(final char character) {
+		return '\n' == character || '\r' == character;
+	}
+
+	private static boolean isCommandCharacter(final char character) {
+		return Character.isLetterOrDigit(character) || character == '*';
+	}
+
+	/**
+	 * @return the index of the first linebreak at or after the given index, or the end
+	 * of the input if there is none
+	 */
+	private static int endOfComment(final CharSequence input, final int from) {
+		int index = from;
+		while (index < input.length() && !isLinebreak(input.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * @return the index of the brace opening the argument of a <pre>\begin</pre> or
+	 * <pre>\end</pre> whose name ends just before the given index, or -1 if there is no
+	 * argument
+	 */
+	private static int startOfEnvironmentName(final CharSequence input, final int from) {
+		int index = from;
+		while (index < input.length() && Character.isWhitespace(input.charAt(index))) {
+			index++;
+		}
+		return (index < input.length() && input.charAt(index) == '{') ? index : -1;
+	}
+
+	/**
+	 * @return the index of the brace closing an environment name whose opening brace is
+	 * at the given index, or -1 if the argument is not a plain name in braces
+	 */
+	private static int endOfEnvironmentName(final CharSequence input, final int open) {
+		for (int index = open + 1; index < input.length(); index++) {
+			switch (input.charAt(index)) {
+				case '}' -> {
+					return index;
+				}
+				case '{', '\\', '`', '\'' -> {
+					return -1;
+				}
+				default -> {
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the top-level dances in a document.
+	 *
+	 * @param input the document
+	 * @return the spans of its top-level dances, or null if it can't be safely split
+	 */
+	@SuppressWarnings("HardcodedFileSeparator")
+	static @Nullable DanceSpans find(final CharSequence input) {
+		int[] starts = new int[16];
+		int[] ends = new int[16];
+		int count = 0;
+		int openedAt = -1;
+		int braceLevel = 0;
+		int bracketLevel = 0;
+		int index = 0;
+		while (index < input.length()) {
+			final char current = input.charAt(index);
+			if (current == PLACEHOLDER) {
+				return null;
+			} else if (bracketLevel > 0) {
+				// Optional arguments are read verbatim up to the matching bracket.
+				if (current == '[') {
+					bracketLevel++;
+				} else if (current == ']') {
+					bracketLevel--;
+				}
+				index++;
+			} else if (current == '\\') {
+				int nameEnd = index + 1;
+				while (nameEnd < input.length() &&
+						       isCommandCharacter(input.charAt(nameEnd))) {
+					nameEnd++;
+				}
+				if (nameEnd == index + 1) {
+					// An escaped character, such as a brace, or a line break
+					index += 2;
+					continue;
+				}
+				final String command = input.subSequence(index + 1, nameEnd).toString();
+				if (braceLevel > 0 ||
+						    !("begin".equals(command) || "end".equals(command))) {
+					index = nameEnd;
+					continue;
+				}
+				final int open = startOfEnvironmentName(input, nameEnd);
+				final int close = (open < 0) ? -1 : endOfEnvironmentName(input, open);
+				if (close < 0) {
+					return null;
+				}
+				final String environment = input.subSequence(open + 1, close).toString();
+				if ("scdance".equals(environment)) {
+					if ("begin".equals(command) == (openedAt >= 0)) {
+						// A dance inside a dance, or the end of one never begun
+						return null;
+					} else if (openedAt < 0) {
+						openedAt = index;
+					} else {
+						if (count == starts.length) {
+							starts = Arrays.copyOf(starts, count * 2);
+							ends = Arrays.copyOf(ends, count * 2);
+						}
+						starts[count] = openedAt;
+						ends[count] = close + 1;
+						count++;
+						openedAt = -1;
+					}
+				} else if (!"document".equals(environment) || openedAt >= 0) {
+					return null;
+				}
+				index = close + 1;
+			} else {
+				switch (current) {
+					case '%' -> {
+						if (braceLevel == 0) {
+							index = endOfComment(input, index);
+							continue;
+						}
+					}
+					case '{' -> braceLevel++;
+					case '}' -> {
+						braceLevel--;
+						if (braceLevel < 0) {
+							return null;
+						}
+					}
+					case '[' -> {
+						if (braceLevel == 0) {
+							bracketLevel = 1;
+						}
+					}
+					default -> {
+					}
+				}
+				index++;
+			}
+		}
+		if (openedAt >= 0 || braceLevel != 0 || bracketLevel != 0) {
+			return null;
+		}
+		return new DanceSpans(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+	}
+
+	@Override
+	public String toString() {
+		return "DanceSpans: %d dances".formatted(starts.length);
+	}
+}
@@ -0,0 +1,76 @@
+package lovelace.tartan.latex;
+
+/**
+ * A cursor over LaTeX input held in memory, for use by {@link LaTeXReader}. Rather than
+ * copying the input (or boxing each character into a queue), this walks the
+ * underlying {@link CharSequence} by index.
+ *
+ * @author Jonathan Lovelace
+ */
+final class LaTeXCursor implements LaTeXInput {
+	/**
+	 * The input we are walking.
+	 */
+	private final CharSequence input;
+	/**
+	 * The index of the next character to be read.
+	 */
+	private int position;
+	/**
+	 * The index one past the last character this cursor may read.
+	 */
+	private final int end;
+
+	/**
+	 * @param input the input to read
+	 */
+	LaTeXCursor(final CharSequence input) {
+		this(input, 0, input.length());
+	}
+
+	/**
+	 * @param input the input to read
+	 * @param start the index of the first character to read
+	 * @param end   the index one past the last character to read
+	 */
+	LaTeXCursor(final CharSequence input, final int start, final int end) {
+		if (start < 0 || end < start || end > input.length()) {
+			throw new IndexOutOfBoundsException("Invalid bounds for cursor");
+		}
+		this.input = input;
+		position = start;
+		this.end = end;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return position >= end;
+	}
+
+	@Override
+	public char peek() {
+		return input.charAt(position);
+	}
+
+	@Override
+	public boolean peekIs(final char expected) {
+		return position < end && input.charAt(position) == expected;
+	}
+
+	@Override
+	public char pop() {
+		final char retval = input.charAt(position);
+		position++;
+		return retval;
+	}
+
+	@Override
+	public int position() {
+		return position;
+	}
+
+	@Override
+	public String toString() {
+		return "LaTeXCursor at %d of %d".formatted(position, end);
+	}
+}
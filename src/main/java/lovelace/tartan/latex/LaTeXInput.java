@@ -0,0 +1,38 @@
+package lovelace.tartan.latex;
+
+/**
+ * The operations {@link LaTeXReader} needs from its input: one character of lookahead,
+ * and the ability to report where it is for use in error messages.
+ *
+ * @author Jonathan Lovelace
+ */
+interface LaTeXInput {
+	/**
+	 * @return whether all input has been consumed
+	 */
+	boolean isEmpty();
+
+	/**
+	 * @return the next character, without consuming it. Callers must check {@link
+	 * #isEmpty()} first.
+	 */
+	char peek();
+
+	/**
+	 * @return whether the next character is the given character; false at end of input
+	 */
+	default boolean peekIs(final char expected) {
+		return !isEmpty() && peek() == expected;
+	}
+
+	/**
+	 * Consume and return the next character. Callers must check {@link #isEmpty()}
+	 * first.
+	 */
+	char pop();
+
+	/**
+	 * @return the index of the next character to be read, for use in error messages
+	 */
+	int position();
+}
@@ -1,16 +1,21 @@
 package lovelace.tartan.latex;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import lovelace.tartan.model.Dance;
 import lovelace.tartan.model.DanceImpl;
+import lovelace.tartan.model.DanceMember;
 import lovelace.tartan.model.Figure;
 import lovelace.tartan.model.FigureParent;
 import lovelace.tartan.model.Intermission;
@@ -22,20 +27,64 @@ import org.jspecify.annotations.Nullable;
 
 /**
  * A class to read a dance program from LaTeX.
+ * <p>
+ * A reader keeps no state of its own between (or during) parses, so one reader may be
+ * used to parse any number of documents, from any number of threads at once.
  *
  * @author Jonathan Lovelace
  */
 @SuppressWarnings("ClassNamePrefixedWithPackageName")
 public final class LaTeXReader {
-	private boolean haveHadCover = false;
-	private boolean haveHadTitle = false;
-	private boolean nextIsBackCover = false;
-
 	/**
 	 * Logger.
 	 */
 	private static final Logger LOGGER = Logger.getLogger(LaTeXReader.class.getName());
 
+	/**
+	 * The initial size of each thread's scratch buffer, in characters.
+	 */
+	private static final int SCRATCH_SIZE = 256;
+
+	/**
+	 * The size past which a thread's scratch buffer is discarded once it is no longer in
+	 * use, rather than kept to be reused, so that one huge block doesn't pin memory.
+	 */
+	private static final int MAX_SCRATCH_SIZE = 1 << 16;
+
+	/**
+	 * Each thread's scratch buffer, in which commands and the contents of blocks are
+	 * collected, so that parsing doesn't allocate a buffer for each of them. A method
+	 * using it appends past its current length and restores that length when done, so
+	 * nested uses (such as the blocks of commands inside a block) can share it.
+	 */
+	private static final ThreadLocal<StringBuilder> SCRATCH =
+			ThreadLocal.withInitial(() -> new StringBuilder(SCRATCH_SIZE));
+
+	/**
+	 * Return this thread's scratch buffer to the length it had before a use of it, and
+	 * discard it if that use was outermost and it has grown too large.
+	 */
+	private static void releaseScratch(final StringBuilder scratch, final int mark) {
+		scratch.setLength(mark);
+		if (mark == 0 && scratch.capacity() > MAX_SCRATCH_SIZE) {
+			SCRATCH.remove();
+		}
+	}
+
+	/**
+	 * The fewest dances a program must have for {@link #readLaTeXProgramInParallel} to
+	 * be worth splitting it up.
+	 */
+	private static final int MIN_PARALLEL_DANCES = 4;
+
+	/**
+	 * How many batches of dances {@link #readLaTeXProgramInParallel} makes for each
+	 * thread that will parse them. Parsing a single dance is too quick to be worth a
+	 * task of its own, but more batches than threads lets those that finish early help
+	 * with the rest.
+	 */
+	private static final int BATCHES_PER_THREAD = 4;
+
 	@SuppressWarnings("HardcodedLineSeparator")
 	private static boolean isLinebreak(final char character) {
 		return '\n' == character || '\r' == character;
@@ -45,7 +94,7 @@ public final class LaTeXReader {
 	 * Skip a newline, represented by either a carriage return, a line feed, or the two
 	 * in either order, but <em>not</em> multiple consecutive newlines.
 	 */
-	private static void skipNewline(final Deque<Character> localInput) {
+	private static void skipNewline(final LaTeXInput localInput) {
 		if (localInput.isEmpty()) {
 			return;
 		}
@@ -66,9 +115,9 @@ public final class LaTeXReader {
 	/**
 	 * Skip a comment, not including the initial '%' character.
 	 *
-	 * @param localInput the queue from which to read
+	 * @param localInput the cursor from which to read
 	 */
-	private static void skipComment(final Deque<Character> localInput) {
+	private static void skipComment(final LaTeXInput localInput) {
 		while (!localInput.isEmpty()) {
 			if (isLinebreak(localInput.peek())) {
 				skipNewline(localInput);
@@ -79,21 +128,20 @@ public final class LaTeXReader {
 		}
 	}
 
-	// TODO: Can we get back to a single input stack and a single StringBuilder?
-
 	/**
 	 * Parse a LaTeX command, minus its initial backslash. In other words, assuming the
 	 * previous character was a backslash, we return a concatenation of every
 	 * character at
-	 * the head of the queue until we reach one that is neither a letter nor an asterisk;
+	 * the cursor until we reach one that is neither a letter nor an asterisk;
 	 * if that character is whitespace, we also consume it, but otherwise we do not.
 	 *
-	 * @param localInput the queue from which to read
+	 * @param localInput the cursor from which to read
 	 */
-	private static String parseCommand(final Deque<Character> localInput) {
-		final StringBuilder builder = new StringBuilder(localInput.size());
+	private static String parseCommand(final LaTeXInput localInput) {
+		final StringBuilder builder = SCRATCH.get();
+		final int mark = builder.length();
 		while (!localInput.isEmpty()) {
-			final char top = localInput.peekFirst();
+			final char top = localInput.peek();
 			if (Character.isWhitespace(top)) {
 				localInput.pop();
 				break;
@@ -106,7 +154,9 @@ public final class LaTeXReader {
 				break;
 			}
 		}
-		return builder.toString();
+		final String retval = builder.substring(mark);
+		releaseScratch(builder, mark);
+		return retval;
 	}
 
 	/**
@@ -226,8 +276,8 @@ public final class LaTeXReader {
 		}
 	}
 
-	private static void stripLeadingWhitespace(final Deque<Character> input) {
-		while (!input.isEmpty() && Character.isWhitespace(input.peekFirst())) {
+	private static void stripLeadingWhitespace(final LaTeXInput input) {
+		while (!input.isEmpty() && Character.isWhitespace(input.peek())) {
 			input.pop();
 		}
 	}
@@ -236,21 +286,41 @@ public final class LaTeXReader {
 	/// replacing some LaTeX idioms with HTML equivalents (e.g. `\textbf{}` with
 	/// HTML bold tags).
 	///
-	/// @param localInput the queue from which to read
+	/// @param localInput the cursor from which to read
 	/// @throws ParseException if there are fewer <pre>}</pre> than <pre>{</pre> in the
 	///                        input
+	static String blockContents(final LaTeXInput localInput)
+			throws ParseException {
+		final StringBuilder scratch = SCRATCH.get();
+		final int mark = scratch.length();
+		try {
+			appendBlockContents(localInput, scratch);
+			return scratch.substring(mark);
+		} finally {
+			releaseScratch(scratch, mark);
+		}
+	}
+
+	/**
+	 * As {@link #blockContents}, but append the contents to the given buffer rather than
+	 * returning them.
+	 *
+	 * @param localInput the cursor from which to read
+	 * @param buffer     the buffer to append the contents to
+	 * @throws ParseException if there are fewer <pre>}</pre> than <pre>{</pre> in the
+	 *                        input
+	 */
 	// HardcodedFileSeparator: '/' is cross-platform in Java!
 	@SuppressWarnings({"ContinueStatement", "HardcodedFileSeparator", "GrazieInspection"})
-	static String blockContents(final Deque<Character> localInput)
+	private static void appendBlockContents(final LaTeXInput localInput,
+	                                        final StringBuilder buffer)
 			throws ParseException {
-		// TODO: Keep track of cursor position so we can give accurate data in thrown
-		//  error (use an actual cursor instead of a stack)
 		stripLeadingWhitespace(localInput);
-		if (localInput.isEmpty() || '{' != localInput.peekFirst()) {
+		if (!localInput.peekIs('{')) {
 			// TODO: Throw on empty (i.e. EOF) intead?
-			return "";
+			return;
 		}
-		final StringBuilder buffer = new StringBuilder(localInput.size());
+		final int start = localInput.position();
 		int braceLevel = 0;
 		while (!localInput.isEmpty()) {
 			final char top = localInput.pop();
@@ -258,7 +328,7 @@ public final class LaTeXReader {
 				case '}' -> {
 					braceLevel--;
 					if (braceLevel == 0) { // TODO: Use <= instead of ==?
-						return buffer.toString();
+						return;
 					} else {
 						buffer.append(top);
 					}
@@ -271,7 +341,7 @@ public final class LaTeXReader {
 				}
 				case '\\' -> handleBackslashQuote(localInput, buffer, top);
 				case '`' -> {
-					if (!localInput.isEmpty() && '`' == localInput.peekFirst()) {
+					if (localInput.peekIs('`')) {
 						localInput.pop();
 						buffer.append('"');
 					} else {
@@ -279,7 +349,7 @@ public final class LaTeXReader {
 					}
 				}
 				case '\'' -> {
-					if (!localInput.isEmpty() && '\'' == localInput.peekFirst()) {
+					if (localInput.peekIs('\'')) {
 						localInput.pop();
 						buffer.append('"');
 					} else {
@@ -289,19 +359,21 @@ public final class LaTeXReader {
 				default -> buffer.append(top);
 			}
 		}
-		throw new ParseException("Unbalanced curly braces in block", -1);
+		throw new ParseException("Unbalanced curly braces in block", start);
 	}
 
 	@SuppressWarnings("HardcodedFileSeparator") // \\ is not a file separator here
-	private static void handleBackslashQuote(final Deque<Character> localInput,
+	private static void handleBackslashQuote(final LaTeXInput localInput,
 	                              final StringBuilder buffer, final char top)
 			throws ParseException {
-		final Character next = localInput.peekFirst();
+		if (localInput.isEmpty()) {
+			throw new ParseException("EOF after backslash", localInput.position());
+		}
+		final char next = localInput.peek();
 		switch (next) {
-			case null -> throw new ParseException("EOF after backslash", -1);
 			case '\\' -> {
 				localInput.pop();
-				if (Character.valueOf('*').equals(localInput.peekFirst())) {
+				if (localInput.peekIs('*')) {
 					localInput.pop();
 				}
 				skipNewline(localInput);
@@ -318,13 +390,13 @@ public final class LaTeXReader {
 		}
 	}
 
-	private static void handleSingleCommand(final Deque<Character> localInput,
+	private static void handleSingleCommand(final LaTeXInput localInput,
 	                              final String nextCommand, final StringBuilder buffer,
 	                              final char top) throws ParseException {
 		switch (nextCommand) {
 			case "textbf":
 				buffer.append("<b>");
-				buffer.append(blockContents(localInput));
+				appendBlockContents(localInput, buffer);
 				buffer.append("</b>");
 				break;
 			case "nicefrac":
@@ -334,12 +406,12 @@ public final class LaTeXReader {
 				break;
 			case "textit": // TODO: Handle \emph as well
 				buffer.append("<i>");
-				buffer.append(blockContents(localInput));
+				appendBlockContents(localInput, buffer);
 				buffer.append("</i>");
 				break;
 			case "textsuperscript":
 				buffer.append("<sup>");
-				buffer.append(blockContents(localInput));
+				appendBlockContents(localInput, buffer);
 				buffer.append("</sup>");
 				break;
 			default:
@@ -354,34 +426,38 @@ public final class LaTeXReader {
 	 * Unlike {@link #blockContents}, this does not (currently) do any additional
 	 * parsing.
 	 *
-	 * @param localInput the queue from which to read
+	 * @param localInput the cursor from which to read
 	 * @throws ParseException if there are fewer <pre>]</pre> than <pre>[</pre> in the
 	 *                        input
 	 */
-	private static String parseOptionalBlock(final Deque<Character> localInput)
+	private static String parseOptionalBlock(final LaTeXInput localInput)
 			throws ParseException {
-		if (localInput.isEmpty()) {
-			return "";
-		}
-		if (localInput.peekFirst() != '[') {
+		if (!localInput.peekIs('[')) {
 			return "";
 		}
+		final int start = localInput.position();
 		localInput.pop();
-		final StringBuilder buffer = new StringBuilder(localInput.size());
-		int braceLevel = 1;
-		while (!localInput.isEmpty()) {
-			final char top = localInput.pop();
-			if (top == ']') {
-				braceLevel--;
-				if (braceLevel == 0) {
-					return buffer.toString();
+		final StringBuilder buffer = SCRATCH.get();
+		final int mark = buffer.length();
+		try {
+			int braceLevel = 1;
+			while (!localInput.isEmpty()) {
+				final char top = localInput.pop();
+				if (top == ']') {
+					braceLevel--;
+					if (braceLevel == 0) {
+						return buffer.substring(mark);
+					}
+				} else if (top == '[') {
+					braceLevel++;
 				}
-			} else if (top == '[') {
-				braceLevel++;
+				buffer.append(top);
 			}
-			buffer.append(top);
+		} finally {
+			releaseScratch(buffer, mark);
 		}
-		throw new ParseException("Unbalanced square braces in optional argument", -1);
+		throw new ParseException("Unbalanced square braces in optional argument",
+				start);
 	}
 
 	/**
@@ -438,19 +514,17 @@ public final class LaTeXReader {
 	 * Parse the contents of a LaTeX environment when not in a dance or named figure.
 	 *
 	 * @param environment the environment we're being asked to parse the contents of
-	 * @param mRetval     the document metadata object to put metadata into
-	 * @param pRetval     the list of dances (etc.) to put dances and intermissions into
-	 * @param innerQueue  the queue from which to read
+	 * @param context     the state of the parse
+	 * @param innerQueue  the cursor from which to read
 	 * @throws ParseException if a dance is inside another dance, the environment name is
 	 *                        the empty string, or we're given an environment this parser
 	 *                        doesn't know how to handle
 	 */
 	private void handleEnvironment(final String environment,
-								   final ProgramMetadata mRetval,
-								   final List<ProgramElement> pRetval,
-								   final Deque<Character> innerQueue)
+								   final ParseContext context,
+								   final LaTeXInput innerQueue)
 			throws ParseException {
-		handleEnvironment(environment, mRetval, pRetval, innerQueue, null);
+		handleEnvironment(environment, context, innerQueue, null);
 	}
 
 	/**
@@ -463,9 +537,8 @@ public final class LaTeXReader {
 	 * to fail.
 	 *
 	 * @param environment  the environment we're being asked to parse the contents of
-	 * @param mRetval      the document metadata object to put metadata into
-	 * @param pRetval      the list of dances (etc.) to put dances and intermissions into
-	 * @param innerQueue   the queue from which to read
+	 * @param context      the state of the parse
+	 * @param innerQueue   the cursor from which to read
 	 * @param currentDance the dance or named figure we are currently inside
 	 * @throws ParseException if a dance is inside another dance, the environment name is
 	 *                        the empty string, or we're given an environment this parser
@@ -473,48 +546,63 @@ public final class LaTeXReader {
 	 */
 	@SuppressWarnings("VariableNotUsedInsideIf")
 	private void handleEnvironment(final String environment,
-	                               final ProgramMetadata mRetval,
-	                               final List<ProgramElement> pRetval,
-	                               final Deque<Character> innerQueue,
+	                               final ParseContext context,
+	                               final LaTeXInput innerQueue,
 	                               final @Nullable FigureParent currentDance)
 			throws ParseException {
 		switch (environment) {
 		case "":
-			throw new ParseException("Empty environment name", -1);
+			throw new ParseException("Empty environment name", innerQueue.position());
 		case "document":
-			parseTokens(innerQueue, mRetval, pRetval, currentDance);
+			parseTokens(innerQueue, context, currentDance);
 			break;
 		case "scdance":
 			if (currentDance != null) {
-				throw new ParseException("Dance nested inside another dance", -1);
+				throw new ParseException("Dance nested inside another dance",
+						innerQueue.position());
 			}
-			final String danceTitle = blockContents(innerQueue);
-			final String danceSource = blockContents(innerQueue);
-			final String danceTempo = blockContents(innerQueue);
-			final String complexLength = blockContents(innerQueue);
-			final String formation = blockContents(innerQueue);
-			final String[] lengthParsed = complexLength.split("x", 2);
-			final Dance temp = new DanceImpl(danceTitle, danceSource, danceTempo,
-					parseTimesThrough(lengthParsed, danceTitle),
-					parseBars(lengthParsed, danceTitle), formation);
-			pRetval.add(temp);
-			parseTokens(innerQueue, mRetval, pRetval, temp);
+			final Dance temp = parseDanceHeader(innerQueue);
+			context.program().add(temp);
+			parseTokens(innerQueue, context, temp);
 			break;
 		default:
-			throw new ParseException("Unhandled LaTeX environment " + environment, -1);
+			throw new ParseException("Unhandled LaTeX environment " + environment,
+					innerQueue.position());
 		}
 	}
 
+	/**
+	 * Parse the arguments of a <pre>\begin{scdance}</pre>, which has already been
+	 * removed from the input queue: the dance's title, source, tempo, length, and
+	 * formation.
+	 *
+	 * @param innerQueue the cursor to read from
+	 * @return a dance with those details and, as yet, no figures
+	 * @throws ParseException when thrown by {@link #blockContents(LaTeXInput)}
+	 */
+	private static Dance parseDanceHeader(final LaTeXInput innerQueue)
+			throws ParseException {
+		final String danceTitle = blockContents(innerQueue);
+		final String danceSource = blockContents(innerQueue);
+		final String danceTempo = blockContents(innerQueue);
+		final String complexLength = blockContents(innerQueue);
+		final String formation = blockContents(innerQueue);
+		final String[] lengthParsed = complexLength.split("x", 2);
+		return new DanceImpl(danceTitle, danceSource, danceTempo,
+				parseTimesThrough(lengthParsed, danceTitle),
+				parseBars(lengthParsed, danceTitle), formation);
+	}
+
 	/**
 	 * Parses the arguments to an <pre>\\scfigure</pre> command, which has already been
 	 * removed from the input queue, and produces a {@link Figure} based on those
 	 * arguments.
 	 *
-	 * @param ourQueue the queue to read from
-	 * @throws ParseException when thrown by {@link #parseOptionalBlock(Deque)} or {@link
-	 *                        #blockContents(Deque)}
+	 * @param ourQueue the cursor to read from
+	 * @throws ParseException when thrown by {@link #parseOptionalBlock(LaTeXInput)} or
+	 *                        {@link #blockContents(LaTeXInput)}
 	 */
-	private static Figure parseFigure(final Deque<Character> ourQueue)
+	private static Figure parseFigure(final LaTeXInput ourQueue)
 			throws ParseException {
 		final String bars = parseOptionalBlock(ourQueue);
 		final String desc = blockContents(ourQueue);
@@ -526,11 +614,12 @@ public final class LaTeXReader {
 	}
 	@SuppressWarnings({"VariableNotUsedInsideIf", "HardcodedFileSeparator"})
 	private static void requireNullContext(final String command,
-	                                       final @Nullable FigureParent currentContext)
+	                                       final @Nullable FigureParent currentContext,
+	                                       final LaTeXInput ourQueue)
 			throws ParseException {
 		if (currentContext != null) {
 			throw new ParseException("\\%s in the middle of a dance"
-					                         .formatted(command), -1);
+					                         .formatted(command), ourQueue.position());
 		}
 	}
 
@@ -539,7 +628,7 @@ public final class LaTeXReader {
 	/// match. For the `\tartanimage` command, uses some heuristics to figure out whether
 	/// this is the cover image, back cover image, or other end-of-program-filler image.
 	/// `\begin{}` delegates to
-	/// [#handleEnvironment(String,ProgramMetadata,List,Deque,FigureParent)] . This
+	/// [#handleEnvironment(String,ParseContext,LaTeXInput,FigureParent)] . This
 	/// method returns true if this is an `\end{}`, so `handleEnvironment()` can exit
 	/// cleanly. `\scfigure{}`, `\namedfigure`, and `\intermission` are parsed into the
 	/// model classes they represent, so long as it's legal for them to appear here. Other
@@ -548,127 +637,126 @@ public final class LaTeXReader {
 	/// heuristics).
 	///
 	/// @param command        the command to handle
-	/// @param mRetval        the metadata object to update if this is a metadata-storage
-	///                       command
-	/// @param pRetval        the list of dances to add new dances to
+	/// @param context        the state of the parse
 	/// @param currentContext the current dance or named figure, if any
-	/// @param ourQueue       the input queue
+	/// @param ourQueue       the input cursor
 	/// @throws ParseException if command name is empty, a documentclass other than tartan
 	///                        is specified, or a legal-nesting invariant is violated
 	@SuppressWarnings({"VariableNotUsedInsideIf", "HardcodedFileSeparator"})
 	private boolean handleCommand(final String command,
-	                              final ProgramMetadata mRetval,
-	                              final List<ProgramElement> pRetval,
+	                              final ParseContext context,
 	                              final @Nullable FigureParent currentContext,
-	                              final Deque<Character> ourQueue)
+	                              final LaTeXInput ourQueue)
 			throws ParseException {
 		switch (command) {
 		case "":
-			throw new ParseException("Unhandled backslash-quoted character", -1);
+			throw new ParseException("Unhandled backslash-quoted character",
+					ourQueue.position());
 		case "documentclass":
-			requireNullContext(command, currentContext);
+			requireNullContext(command, currentContext, ourQueue);
 			if (!"tartan".equals(blockContents(ourQueue))) {
-				throw new ParseException("We only support the tartan documentclass", -1);
+				throw new ParseException("We only support the tartan documentclass",
+						ourQueue.position());
 			}
 			return false;
 		case "tartangroupname":
-			requireNullContext(command, currentContext);
-			mRetval.setGroupCoverName(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setGroupCoverName(blockContents(ourQueue));
 			break;
 		case "tartangroupname*":
-			requireNullContext(command, currentContext);
-			mRetval.setGroupTitleName(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setGroupTitleName(blockContents(ourQueue));
 			break;
 		case "tartanballname":
-			requireNullContext(command, currentContext);
-			mRetval.setEventCoverName(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setEventCoverName(blockContents(ourQueue));
 			break;
 		case "tartanballname*":
-			requireNullContext(command, currentContext);
-			mRetval.setEventTitleName(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setEventTitleName(blockContents(ourQueue));
 			break;
 		case "tartanballdate":
-			requireNullContext(command, currentContext);
-			mRetval.setCoverDate(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setCoverDate(blockContents(ourQueue));
 			break;
 		case "tartanballdate*":
-			requireNullContext(command, currentContext);
-			mRetval.setTitleDate(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setTitleDate(blockContents(ourQueue));
 			break;
 		case "tartanhall":
-			requireNullContext(command, currentContext);
-			mRetval.setCoverLocation(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setCoverLocation(blockContents(ourQueue));
 			break;
 		case "tartanhall*":
-			requireNullContext(command, currentContext);
-			mRetval.setTitleLocation(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setTitleLocation(blockContents(ourQueue));
 			break;
 		case "tartanhalladdress":
-			requireNullContext(command, currentContext);
-			mRetval.setLocationAddress(blockContents(ourQueue));
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setLocationAddress(blockContents(ourQueue));
 			break;
 		case "tartantimes":
-			requireNullContext(command, currentContext);
-			mRetval.setTitleTimes(blockContents(ourQueue).trim());
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setTitleTimes(blockContents(ourQueue).trim());
 			break;
 		case "tartanmusicians":
-			requireNullContext(command, currentContext);
-			mRetval.setMusicians(blockContents(ourQueue).trim());
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setMusicians(blockContents(ourQueue).trim());
 			break;
 		case "tartancover":
-			requireNullContext(command, currentContext);
-			mRetval.setCoverImage(null);
-			haveHadCover = true;
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setCoverImage(null);
+			context.setHadCover();
 			break;
 		case "listofdances", "maketartantitle":
-			requireNullContext(command, currentContext);
-			haveHadCover = true;
-			haveHadTitle = true;
+			requireNullContext(command, currentContext, ourQueue);
+			context.setHadCover();
+			context.setHadTitle();
 			break;
 		case "tartanimage":
-			requireNullContext(command, currentContext);
+			requireNullContext(command, currentContext, ourQueue);
 			// TODO: Put logic for this inside ProgramMetadata?
-			if (nextIsBackCover) {
-				Optional.ofNullable(mRetval.getBackCoverImage())
-						.ifPresent(mRetval.getInsidePostDanceImages()::add);
-				mRetval.setBackCoverImage(Paths.get(blockContents(ourQueue)));
-			} else if (haveHadCover) {
-				mRetval.getInsidePostDanceImages()
+			if (context.nextIsBackCover()) {
+				Optional.ofNullable(context.metadata().getBackCoverImage())
+						.ifPresent(context.metadata().getInsidePostDanceImages()::add);
+				context.metadata().setBackCoverImage(Paths.get(blockContents(ourQueue)));
+			} else if (context.hadCover()) {
+				context.metadata().getInsidePostDanceImages()
 						.add(Paths.get(blockContents(ourQueue)));
 			} else {
-				mRetval.setCoverImage(Paths.get(blockContents(ourQueue)));
-				haveHadCover = true;
+				context.metadata().setCoverImage(Paths.get(blockContents(ourQueue)));
+				context.setHadCover();
 			}
 			break;
 		case "cleartoverso":
-			requireNullContext(command, currentContext);
-			nextIsBackCover = true;
+			requireNullContext(command, currentContext, ourQueue);
+			context.setNextIsBackCover();
 			break;
 		case "tartanimagecover":
-			requireNullContext(command, currentContext);
-			mRetval.setCoverImage(Paths.get(blockContents(ourQueue)));
-			haveHadCover = true;
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setCoverImage(Paths.get(blockContents(ourQueue)));
+			context.setHadCover();
 			break;
 		case "clearpage":
 			if (currentContext != null) {
 				// we're clearly not delimiting the title page!
 				return false;
-			} else if (haveHadCover && !haveHadTitle) {
-				mRetval.setTitleOnCover(true);
-				haveHadTitle = true;
+			} else if (context.hadCover() && !context.hadTitle()) {
+				context.metadata().setTitleOnCover(true);
+				context.setHadTitle();
 			}
 			break;
 		case "cleardoublepage":
 			if (currentContext != null) {
 				// we're clearly not delimiting the title page!
 				return false;
-			} else if (haveHadCover && !haveHadTitle) {
-				mRetval.setTitleOnCover(false);
-				haveHadTitle = true;
+			} else if (context.hadCover() && !context.hadTitle()) {
+				context.metadata().setTitleOnCover(false);
+				context.setHadTitle();
 			}
 			break;
 		case "begin":
-			handleEnvironment(blockContents(ourQueue), mRetval, pRetval, ourQueue,
+			handleEnvironment(blockContents(ourQueue), context, ourQueue,
 					currentContext);
 			break;
 		case "end":
@@ -676,124 +764,156 @@ public final class LaTeXReader {
 			if ("scdance".equals(environmentName)) {
 				if (currentContext == null) {
 					throw new ParseException("\\end{scdance} without \\begin{scdance}",
-							-1);
+							ourQueue.position());
 				}
 			} else if (!"document".equals(environmentName)) {
 				throw new ParseException("Unhandled end-environment " + environmentName,
-						-1);
+						ourQueue.position());
 			}
 			return true;
 		case "scfigure":
 			parseSimpleFigure(currentContext, ourQueue);
 			break;
 		case "namedfigure":
-			parseNamedFigure(mRetval, pRetval, currentContext, ourQueue);
+			parseNamedFigure(context, currentContext, ourQueue);
 			break;
 		case "intermission":
-			requireNullContext(command, currentContext);
+			requireNullContext(command, currentContext, ourQueue);
 			final String argument = parseOptionalBlock(ourQueue);
 			if (argument.isEmpty()) {
-				pRetval.add(new Intermission());
+				context.program().add(new Intermission());
 			} else {
-				pRetval.add(new Intermission(argument));
+				context.program().add(new Intermission(argument));
 			}
 			break;
 		case "auldlangsyne":
-			requireNullContext(command, currentContext);
-			mRetval.setPrintAuldLangSyne(true);
+			requireNullContext(command, currentContext, ourQueue);
+			context.metadata().setPrintAuldLangSyne(true);
 			break;
 		case "vspace":
 		case "vspace*":
 			blockContents(ourQueue); // ignore argument
 			break;
 		default:
-			throw new ParseException("Unhandled command \\" + command, -1);
+			throw new ParseException("Unhandled command \\" + command,
+					ourQueue.position());
 		}
 		return false;
 	}
 
-	private void parseNamedFigure(final ProgramMetadata mRetval,
-	                       final List<ProgramElement> pRetval,
+	private void parseNamedFigure(final ParseContext context,
 	                       final @Nullable FigureParent currentContext,
-	                       final Deque<Character> ourQueue)
+	                       final LaTeXInput ourQueue)
 			throws ParseException {
 		switch (currentContext) {
 			case final Dance dance -> {
 				final NamedFigure namedFigure = new NamedFigure();
-				final String contents = blockContents(ourQueue);
-				//noinspection NumericCastThatLosesPrecision
-				parseTokens(contents.chars().mapToObj(i -> (char) i).collect(
-								Collectors.toCollection(LinkedList::new)),
-						mRetval, pRetval, namedFigure);
+				parseBlockTokens(ourQueue, context, namedFigure);
 				dance.getContents().add(namedFigure);
 			}
 			case final NamedFigure ignored -> throw new ParseException(
-					"Named figure nested inside named figure", -1);
-			case null, default ->
-					throw new ParseException("Named figure outside any dance", -1);
+					"Named figure nested inside named figure", ourQueue.position());
+			case null, default -> throw new ParseException(
+					"Named figure outside any dance", ourQueue.position());
 		}
 	}
 
+	/**
+	 * If the cursor is at the beginning of a curly-brace block, parse its contents as
+	 * the contents of the given dance or named figure. Unlike {@link #blockContents},
+	 * this reads the block in place, through a {@link BlockInput}, rather than
+	 * collecting it into a string to be parsed again.
+	 *
+	 * @param localInput     the cursor from which to read
+	 * @param context        the state of the parse
+	 * @param currentContext the dance or named figure the block's contents belong to
+	 * @throws ParseException if the block is not closed, or on any error in its contents
+	 */
+	private void parseBlockTokens(final LaTeXInput localInput,
+	                              final ParseContext context,
+	                              final FigureParent currentContext)
+			throws ParseException {
+		stripLeadingWhitespace(localInput);
+		if (!localInput.peekIs('{')) {
+			return;
+		}
+		final int start = localInput.position();
+		localInput.pop();
+		final BlockInput block = new BlockInput(localInput);
+		parseTokens(block, context, currentContext);
+		// An \end{} ends the parse early; the rest of the block is ignored.
+		while (!block.isEmpty()) {
+			block.pop();
+		}
+		if (localInput.isEmpty()) {
+			throw new ParseException("Unbalanced curly braces in block", start);
+		}
+		localInput.pop();
+	}
+
 	private static void parseSimpleFigure(final @Nullable FigureParent currentContext,
-	                              final Deque<Character> ourQueue)
+	                              final LaTeXInput ourQueue)
 			throws ParseException {
 		switch (currentContext) {
 			case final Dance dance -> dance.getContents().add(parseFigure(ourQueue));
 			case final NamedFigure namedFigure ->
 					namedFigure.getContents().add(parseFigure(ourQueue));
-			case null, default ->
-					throw new ParseException("Figure outside any dance", -1);
+			case null, default -> throw new ParseException("Figure outside any dance",
+					ourQueue.position());
 		}
 	}
 
 	/**
 	 * The main loop of the parser. A separate method because it simplifies things for
-	 * {@link #handleCommand(String, ProgramMetadata, List, FigureParent, Deque)} and
-	 * {@link #handleEnvironment(String, ProgramMetadata, List, Deque, FigureParent)} to
-	 * be able to call it.
+	 * {@link #handleCommand(String, ParseContext, FigureParent, LaTeXInput)}
+	 * and {@link #handleEnvironment(String, ParseContext, LaTeXInput,
+	 * FigureParent)} to be able to call it.
 	 *
-	 * @param inputQueue the input stream to read from
-	 * @param mRetval    the metadata object to update from metadata commands
-	 * @param pRetval    the list of dances etc. to add dances to
+	 * @param inputQueue the input cursor to read from
+	 * @param context    the state of the parse
 	 * @throws ParseException if one of our invariants is violated
 	 */
-	private void parseTokens(final Deque<Character> inputQueue,
-							 final ProgramMetadata mRetval,
-							 final List<ProgramElement> pRetval)
+	private void parseTokens(final LaTeXInput inputQueue,
+							 final ParseContext context)
 			throws ParseException {
-		parseTokens(inputQueue, mRetval, pRetval, null);
+		parseTokens(inputQueue, context, null);
 	}
 
 	/**
 	 * The main loop of the parser. A separate method because it simplifies things for
-	 * {@link #handleCommand(String, ProgramMetadata, List, FigureParent, Deque)} and
-	 * {@link #handleEnvironment(String, ProgramMetadata, List, Deque, FigureParent)} to
-	 * be able to call it.
+	 * {@link #handleCommand(String, ParseContext, FigureParent, LaTeXInput)}
+	 * and {@link #handleEnvironment(String, ParseContext, LaTeXInput,
+	 * FigureParent)} to be able to call it.
 	 *
-	 * @param inputQueue     the input stream to read from
-	 * @param mRetval        the metadata object to update from metadata commands
-	 * @param pRetval        the list of dances etc. to add dances to
+	 * @param inputQueue     the input cursor to read from
+	 * @param context        the state of the parse
 	 * @param currentContext the current dance or named figure, if any
 	 * @throws ParseException if one of our invariants is violated
 	 */
 	@SuppressWarnings("HardcodedFileSeparator")
-	private void parseTokens(final Deque<Character> inputQueue,
-	                         final ProgramMetadata mRetval,
-	                         final List<ProgramElement> pRetval,
+	private void parseTokens(final LaTeXInput inputQueue,
+	                         final ParseContext context,
 	                         final @Nullable FigureParent currentContext)
 			throws ParseException {
+		final List<Integer> danceSlots = context.danceSlots();
 		while (!inputQueue.isEmpty()) {
 			final char top = inputQueue.pop();
 			if (top == '%') {
 				skipComment(inputQueue);
+			} else if (top == DanceSpans.PLACEHOLDER && danceSlots != null) {
+				if (currentContext != null) {
+					throw new ParseException("Dance nested inside another dance",
+							inputQueue.position());
+				}
+				danceSlots.add(context.program().size());
 			} else if (top == '\\') {
-				if (handleCommand(parseCommand(inputQueue), mRetval, pRetval,
+				if (handleCommand(parseCommand(inputQueue), context,
 						currentContext, inputQueue)) {
 					break;
 				}
 			} else if (!Character.isWhitespace(top)) {
-				throw new ParseException("Unhandled character '%c'".formatted( top),
-						-1);
+				throw new ParseException("Unhandled character '%c'".formatted(top),
+						inputQueue.position() - 1);
 			}
 		}
 	}
@@ -811,19 +931,304 @@ public final class LaTeXReader {
 	public Pair<ProgramMetadata,
 				List<ProgramElement>> readLaTeXProgram(
 			final String input) throws ParseException {
-		final ProgramMetadata mRetval = new ProgramMetadata();
-		final List<ProgramElement> pRetval = new ArrayList<>();
-		@SuppressWarnings("NumericCastThatLosesPrecision")
-		final Deque<Character> inputQueue =
-				input.chars().mapToObj(i -> (char) i).collect(
-						Collectors.toCollection(LinkedList::new));
-		parseTokens(inputQueue, mRetval, pRetval);
-		return Pair.of(mRetval, pRetval);
+		final ParseContext context = new ParseContext();
+		parseTokens(new LaTeXCursor(input), context);
+		return Pair.of(context.metadata(), context.program());
+	}
+
+	/**
+	 * Parse a LaTeX representation of a Ball program, read incrementally from the given
+	 * {@link Reader}, and return the {@link ProgramMetadata} and the list of program
+	 * elements it contains if parsing succeeds. Unlike {@link
+	 * #readLaTeXProgram(String)}, this does not require the whole document to be held
+	 * in memory. The reader is not closed.
+	 *
+	 * @param input the source of the LaTeX to parse
+	 * @throws ParseException on parsing failure
+	 * @throws IOException    on I/O error while reading
+	 */
+	public Pair<ProgramMetadata,
+				List<ProgramElement>> readLaTeXProgram(
+			final Reader input) throws ParseException, IOException {
+		final ParseContext context = new ParseContext();
+		try {
+			parseTokens(new StreamingLaTeXInput(input), context);
+		} catch (final UncheckedIOException except) {
+			throw except.getCause();
+		}
+		return Pair.of(context.metadata(), context.program());
+	}
+
+	/**
+	 * Parse a LaTeX representation of a Ball program, as {@link
+	 * #readLaTeXProgram(String)} does, but parse its dances in parallel on the common
+	 * fork-join pool. This is worthwhile for programs with many dances on machines with
+	 * several cores; on a machine with only one, this parses sequentially.
+	 *
+	 * @param input the LaTeX to parse
+	 * @throws ParseException on parsing failure
+	 */
+	public Pair<ProgramMetadata,
+				List<ProgramElement>> readLaTeXProgramInParallel(
+			final String input) throws ParseException {
+		final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		if (parallelism < 2) {
+			return readLaTeXProgram(input);
+		}
+		return readLaTeXProgramInParallel(input, ForkJoinPool.commonPool(), parallelism);
+	}
+
+	/**
+	 * Parse a LaTeX representation of a Ball program, as {@link
+	 * #readLaTeXProgram(String)} does, but parse its dances in parallel using the given
+	 * executor, such as a {@link ForkJoinPool}.
+	 *
+	 * @param input    the LaTeX to parse
+	 * @param executor the executor to parse the dances on
+	 * @throws ParseException on parsing failure
+	 */
+	public Pair<ProgramMetadata,
+				List<ProgramElement>> readLaTeXProgramInParallel(
+			final String input, final Executor executor) throws ParseException {
+		final int parallelism = (executor instanceof final ForkJoinPool pool) ?
+				pool.getParallelism() : Runtime.getRuntime().availableProcessors();
+		return readLaTeXProgramInParallel(input, executor, parallelism);
+	}
+
+	/**
+	 * The dances parsed from a batch of spans, up to the first that failed to parse, and
+	 * the error from that one if any did.
+	 */
+	private record ParsedSpans(List<Dance> dances, @Nullable ParseException failure) {
+	}
+
+	/// Parse a LaTeX representation of a Ball program, as [#readLaTeXProgram(String)]
+	/// does, but parse its dances in parallel using the given executor.
+	///
+	/// A quick scan first finds the top-level `scdance` environments (see
+	/// [DanceSpans]), and batches of them are handed to the executor to parse, while
+	/// this thread parses the rest of the document, which holds the metadata and
+	/// intermissions, passing over the dances. The dances are then put back in their
+	/// places. If the document can't be safely split, or has only a few dances, it is
+	/// simply parsed sequentially. The result, including which error is reported if
+	/// parsing fails, is the same as [#readLaTeXProgram(String)] would produce.
+	///
+	/// @param input       the LaTeX to parse
+	/// @param executor    the executor to parse the dances on
+	/// @param parallelism how many threads the executor will use
+	/// @throws ParseException on parsing failure
+	private Pair<ProgramMetadata,
+				List<ProgramElement>> readLaTeXProgramInParallel(
+			final String input, final Executor executor, final int parallelism)
+			throws ParseException {
+		final DanceSpans spans = DanceSpans.find(input);
+		if (spans == null || spans.count() < MIN_PARALLEL_DANCES) {
+			return readLaTeXProgram(input);
+		}
+		final int batchSize = Math.max(1,
+				spans.count() / (Math.max(1, parallelism) * BATCHES_PER_THREAD));
+		final List<CompletableFuture<ParsedSpans>> batches = new ArrayList<>();
+		for (int start = 0; start < spans.count(); start += batchSize) {
+			final int from = start;
+			final int to = Math.min(spans.count(), start + batchSize);
+			batches.add(CompletableFuture.supplyAsync(
+					() -> parseDanceSpans(input, spans, from, to), executor));
+		}
+		final List<Integer> slots = new ArrayList<>(spans.count());
+		final ParseContext context = new ParseContext(slots);
+		final SkeletonCursor cursor = new SkeletonCursor(input, spans);
+		@Nullable ParseException failure = null;
+		try {
+			parseTokens(cursor, context);
+		} catch (final ParseException except) {
+			failure = except;
+		}
+		// Dances the parse never reached (because it failed or the document ended)
+		// don't belong in the program, and their errors would not have been reported.
+		for (int i = (slots.size() + batchSize - 1) / batchSize; i < batches.size();
+		     i++) {
+			batches.get(i).cancel(false);
+		}
+		if (cursor.skipped() != slots.size()) {
+			// Something other than the main loop read a placeholder, so the spans
+			// weren't where the scan thought; fall back to a sequential parse.
+			LOGGER.fine("Couldn't split program for parallel parsing");
+			return readLaTeXProgram(input);
+		}
+		final List<Dance> parsed = new ArrayList<>(slots.size());
+		for (int i = 0; parsed.size() < slots.size(); i++) {
+			final ParsedSpans batch;
+			try {
+				batch = batches.get(i).join();
+			} catch (final CompletionException except) {
+				if (except.getCause() instanceof final RuntimeException cause) {
+					throw cause;
+				} else {
+					throw except;
+				}
+			}
+			parsed.addAll(batch.dances().subList(0,
+					Math.min(batch.dances().size(), slots.size() - parsed.size())));
+			final ParseException cause = batch.failure();
+			if (cause != null && parsed.size() < slots.size()) {
+				// Report whichever error a sequential parse would have hit first.
+				if (failure == null ||
+						    cause.getErrorOffset() < failure.getErrorOffset()) {
+					failure = cause;
+				}
+				break;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return Pair.of(context.metadata(), mergeDances(context.program(), slots, parsed));
+	}
+
+	/**
+	 * Put dances parsed separately back into the program parsed around them.
+	 *
+	 * @param skeleton the program without the dances
+	 * @param slots    where in the skeleton each dance belongs
+	 * @param dances   the dances
+	 * @return the whole program
+	 */
+	private static List<ProgramElement> mergeDances(final List<ProgramElement> skeleton,
+	                                                final List<Integer> slots,
+	                                                final List<? extends Dance> dances) {
+		final List<ProgramElement> program =
+				new ArrayList<>(skeleton.size() + dances.size());
+		int next = 0;
+		for (int i = 0; i < dances.size(); i++) {
+			program.addAll(skeleton.subList(next, slots.get(i)));
+			next = slots.get(i);
+			program.add(dances.get(i));
+		}
+		program.addAll(skeleton.subList(next, skeleton.size()));
+		return program;
+	}
+
+	/**
+	 * Parse the given spans, in order, stopping at the first that fails to parse.
+	 */
+	private ParsedSpans parseDanceSpans(final String input, final DanceSpans spans,
+	                                    final int from, final int to) {
+		final List<Dance> retval = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			try {
+				retval.add(parseDanceSpan(input, spans.start(i), spans.end(i)));
+			} catch (final ParseException except) {
+				return new ParsedSpans(retval, except);
+			}
+		}
+		return new ParsedSpans(retval, null);
+	}
+
+	/**
+	 * Parse a single top-level dance, from its <pre>\begin{scdance}</pre> to its
+	 * <pre>\end{scdance}</pre>. Since nothing inside a dance may touch the program's
+	 * metadata or the state of the parse, this uses a context of its own.
+	 */
+	private Dance parseDanceSpan(final String input, final int start, final int end)
+			throws ParseException {
+		final ParseContext context = new ParseContext();
+		parseTokens(new LaTeXCursor(input, start, end), context);
+		final List<ProgramElement> parsed = context.program();
+		if (parsed.size() == 1 && parsed.getFirst() instanceof final Dance dance) {
+			return dance;
+		} else {
+			throw new IllegalStateException("Span didn't hold exactly one dance");
+		}
+	}
+
+	/// Parse a LaTeX representation of a Ball program, as [#readLaTeXProgram(String)]
+	/// does, but leave the figures of each dance to be parsed when they are first
+	/// asked for. The program's metadata, intermissions, and the details of each dance
+	/// (title, source, tempo, length, and formation) are parsed at once, which is all
+	/// that is needed to show the list of dances; each dance's figures are parsed from
+	/// the original text the first time its [Dance#getContents()] is called.
+	///
+	/// Errors in a dance's figures are therefore not reported here; instead, that
+	/// dance's [Dance#getContents()] will throw an [IllegalStateException] wrapping the
+	/// [ParseException]. If the document can't be safely split into dances (see
+	/// [DanceSpans]), it is simply parsed at once.
+	///
+	/// Unlike [#readLaTeXProgram(Reader)], this needs the whole document in memory, and
+	/// keeps it there until every dance's figures have been parsed, since they are
+	/// parsed from it. Where every dance will be parsed anyway, as when checking that a
+	/// file can be read, the streaming reader is the better choice.
+	///
+	/// @param input the LaTeX to parse
+	/// @throws ParseException on failure to parse anything other than dances' figures
+	public Pair<ProgramMetadata,
+				List<ProgramElement>> readLaTeXProgramLazily(
+			final String input) throws ParseException {
+		final DanceSpans spans = DanceSpans.find(input);
+		if (spans == null) {
+			return readLaTeXProgram(input);
+		}
+		final List<Integer> slots = new ArrayList<>(spans.count());
+		final ParseContext context = new ParseContext(slots);
+		final SkeletonCursor cursor = new SkeletonCursor(input, spans);
+		@Nullable ParseException failure = null;
+		try {
+			parseTokens(cursor, context);
+		} catch (final ParseException except) {
+			failure = except;
+		}
+		if (cursor.skipped() != slots.size()) {
+			LOGGER.fine("Couldn't split program for lazy parsing");
+			return readLaTeXProgram(input);
+		}
+		// Any error in the details of a dance the parse reached comes before the error
+		// that stopped it.
+		final List<Dance> dances = new ArrayList<>(slots.size());
+		for (int i = 0; i < slots.size(); i++) {
+			dances.add(parseLazyDance(input, spans.start(i), spans.end(i)));
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return Pair.of(context.metadata(), mergeDances(context.program(), slots, dances));
+	}
+
+	/**
+	 * Parse the details of a single top-level dance, from its
+	 * <pre>\begin{scdance}</pre>, leaving its figures for later.
+	 */
+	@SuppressWarnings("HardcodedFileSeparator")
+	private LazyDance parseLazyDance(final String input, final int start, final int end)
+			throws ParseException {
+		final LaTeXCursor cursor = new LaTeXCursor(input, start, end);
+		cursor.pop(); // the backslash
+		if (!"begin".equals(parseCommand(cursor)) ||
+				    !"scdance".equals(blockContents(cursor))) {
+			throw new IllegalStateException("Span didn't start with a dance");
+		}
+		final Dance header = parseDanceHeader(cursor);
+		return new LazyDance(header, this, input, cursor.position(), end);
+	}
+
+	/**
+	 * Parse the figures of a dance read by {@link #readLaTeXProgramLazily}.
+	 *
+	 * @param input the document the dance came from
+	 * @param start the index of the first character after the dance's details
+	 * @param end   the index one past the end of the dance's
+	 *              <pre>\end{scdance}</pre>
+	 * @return the dance's figures
+	 * @throws ParseException on failure to parse the figures
+	 */
+	List<DanceMember> parseDanceBody(final String input, final int start, final int end)
+			throws ParseException {
+		// The parser adds figures to the dance it is in; collect them in a stand-in.
+		final Dance holder = new DanceImpl("", "", "", 0, 0, "");
+		parseTokens(new LaTeXCursor(input, start, end), new ParseContext(), holder);
+		return holder.getContents();
 	}
 
 	@Override
 	public String toString() {
-		return "LaTeXReader (cover: %s, title: %s, inside back cover: %s)"
-				       .formatted(haveHadCover, haveHadTitle, nextIsBackCover);
+		return "LaTeXReader";
 	}
 }
@@ -1,6 +1,7 @@
 package lovelace.tartan.latex;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
@@ -15,6 +16,7 @@ import lovelace.tartan.model.NamedFigureMember;
 import lovelace.tartan.model.ProgramElement;
 import lovelace.tartan.model.ProgramMetadata;
 import lovelace.tartan.model.SimplestMember;
+import lovelace.util.Pair;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -31,21 +33,92 @@ public final class LaTeXWriter {
 	private static final List<String> SUPPORTED_IMAGE_EXTENSIONS =
 			List.of(".png", ".jpg", ".pdf");
 
+	/**
+	 * The HTML tags we support in text, and the LaTeX we write in their place.
+	 */
+	@SuppressWarnings({"StaticCollection", "HardcodedFileSeparator"}) // unmodifiable
+	private static final List<Pair<String, String>> TAG_REPLACEMENTS = List.of(
+			Pair.of("<b>", "\\textbf{"), Pair.of("</b>", "}"),
+			Pair.of("<i>", "\\textit{"), Pair.of("</i>", "}"),
+			Pair.of("<sup>", "\\textsuperscript"), Pair.of("</sup>", "}"));
+
+	/**
+	 * @return the LaTeX to write in place of the given character, or null if it should
+	 * be written as-is
+	 */
 	@SuppressWarnings("HardcodedFileSeparator") // Not a file separator
-	private static String quoted(final String string) {
-		return string.replace("&", "\\&").replace("{", "\\{").replace("}", "\\}")
-			.replace("<b>", "\\textbf{").replace("</b>", "}")
-			.replace("<i>", "\\textit{").replace("</i>", "}")
-			.replace("½", "\\nicefrac{1}{2}")
-			.replace("<sup>", "\\textsuperscript").replace("</sup>", "}")
-			.replace("¾", "\\nicefrac{3}{4}").replace("“", "``")
-			.replace("”", "''").replace("–", "---").replace("’", "'")
-			.replace("„", "``").replace("‟", "''").replace("‘", "'")
-			.replace("‗", "`").replace("\f", "")
-			.replace("¼", "\\nicefrac{1}{4}").replace("‑", "--")
-			.replace("─", "---").replace("—", "---").replace(";", ";")
-			.replace("⅔", "\\nicefrac{2}{3}").replace("⅜", "\\nicefrac{3}{8}")
-			.replace("⅞", "\\nicefrac{7}{8}");
+	private static @Nullable String escape(final char character) {
+		return switch (character) {
+			case '&' -> "\\&";
+			case '{' -> "\\{";
+			case '}' -> "\\}";
+			case '½' -> "\\nicefrac{1}{2}";
+			case '¼' -> "\\nicefrac{1}{4}";
+			case '¾' -> "\\nicefrac{3}{4}";
+			case '⅔' -> "\\nicefrac{2}{3}";
+			case '⅜' -> "\\nicefrac{3}{8}";
+			case '⅞' -> "\\nicefrac{7}{8}";
+			case '“', '„' -> "``";
+			case '”', '‟' -> "''";
+			case '’', '‘' -> "'";
+			case '‗' -> "`";
+			case '–', '─', '—' -> "---";
+			case '‑' -> "--";
+			case '\u037E' -> ";"; // Greek question mark
+			case '\f' -> "";
+			default -> null;
+		};
+	}
+
+	/**
+	 * Write part of a string to the stream, avoiding the substring {@link
+	 * Writer#append(CharSequence, int, int)} would create.
+	 */
+	private static void appendRange(final Appendable ostream, final String string,
+	                                final int start, final int end) throws IOException {
+		if (start == end) {
+			return;
+		} else if (ostream instanceof final Writer writer) {
+			writer.write(string, start, end - start);
+		} else {
+			ostream.append(string, start, end);
+		}
+	}
+
+	/**
+	 * Write the given text to the stream, escaping characters that are special to LaTeX
+	 * and translating the HTML tags and typographic characters we support into their
+	 * LaTeX equivalents. This is done in a single pass over the text; runs of
+	 * characters that need no translation are written as they are.
+	 */
+	static void quote(final Appendable ostream, final String string)
+			throws IOException {
+		final int length = string.length();
+		int unwritten = 0;
+		int index = 0;
+		while (index < length) {
+			final char current = string.charAt(index);
+			@Nullable String replacement = null;
+			int consumed = 1;
+			if ('<' == current) {
+				for (final Pair<String, String> tag : TAG_REPLACEMENTS) {
+					if (string.startsWith(tag.getFirst(), index)) {
+						replacement = tag.getSecond();
+						consumed = tag.getFirst().length();
+						break;
+					}
+				}
+			} else {
+				replacement = escape(current);
+			}
+			if (replacement != null) {
+				appendRange(ostream, string, unwritten, index);
+				ostream.append(replacement);
+				unwritten = index + consumed;
+			}
+			index += consumed;
+		}
+		appendRange(ostream, string, unwritten, length);
 	}
 
 	private static void writePrologueLine(final Appendable ostream,
@@ -58,7 +131,9 @@ public final class LaTeXWriter {
 			ostream.append("\\");
 			ostream.append(command);
 			ostream.append("{");
-			ostream.append(quoted(arg).trim());
+			// Trimming the input is equivalent to trimming the escaped output, since
+			// escaping never produces leading or trailing whitespace.
+			quote(ostream, arg.trim());
 			writeLine(ostream, "}");
 		}
 	}
@@ -133,7 +208,7 @@ public final class LaTeXWriter {
 			ostream.append(']');
 		}
 		ostream.append('{');
-		ostream.append(quoted(figure.getDescription()));
+		quote(ostream, figure.getDescription());
 		writeLine(ostream, "}");
 	}
 
@@ -230,10 +305,22 @@ public final class LaTeXWriter {
 	@SuppressWarnings("HardcodedFileSeparator") // \\ is not a file separator here
 	private static void writeDance(final Appendable out, final Dance dance)
 			throws IOException {
-		out.append("\\begin{scdance}{%s}{%s}{%s}{%dx%d}{%s}%n".formatted(
+		out.append("\\begin{scdance}{%s}{%s}{%s}{%dx%d}{%s}".formatted(
 				dance.getTitle(), dance.getSource(),
 				dance.getTempo(), dance.getTimes(),
 				dance.getLength(), dance.getFormation()));
+		// A lazily read dance whose figures haven't been parsed (perhaps because they
+		// can't be) is written back as it was read, rather than parsed just to be
+		// written out again.
+		if (dance instanceof final LazyDance lazy) {
+			final String body = lazy.unparsedBody();
+			if (body != null) {
+				out.append(body);
+				writeLine(out, "");
+				return;
+			}
+		}
+		out.append(System.lineSeparator());
 		for (final DanceMember figure : dance.getContents()) {
 			switch (figure) {
 				case final Figure fig -> writeSimpleFigure(out, fig);
@@ -308,6 +395,12 @@ public final class LaTeXWriter {
 		retval += Stream.of(dance.getTitle(), dance.getSource(), dance.getTempo(),
 				Integer.toString(dance.getTimes()), Integer.toString(dance.getLength()),
 				dance.getFormation()).mapToInt(String::length).sum();
+		if (dance instanceof final LazyDance lazy) {
+			final String body = lazy.unparsedBody();
+			if (body != null) {
+				return retval + body.length();
+			}
+		}
 		for (final DanceMember figure : dance.getContents()) {
 			retval += switch (figure) {
 			case final Figure fig -> estimateSimpleFigureSize(fig);
@@ -0,0 +1,159 @@
+package lovelace.tartan.latex;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import lovelace.tartan.model.Dance;
+import lovelace.tartan.model.DanceImpl;
+import lovelace.tartan.model.DanceMember;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A dance read by {@link LaTeXReader#readLaTeXProgramLazily}, whose details were parsed
+ * with the rest of the program but whose figures are parsed from the original LaTeX
+ * only when they are first asked for.
+ * <p>
+ * Since the figures were not checked when the program was read, they may turn out not
+ * to parse. In that case {@link #getContents()} throws an {@link IllegalStateException}
+ * wrapping the {@link ParseException}, every time it is called, rather than returning
+ * a partial list that might then be saved in place of the original. Until its figures
+ * are parsed, {@link LaTeXWriter} writes them back out exactly as they were read, so a
+ * program with a dance that cannot be parsed can still be saved without losing it.
+ *
+ * @author Jonathan Lovelace
+ */
+final class LazyDance extends DanceImpl {
+	private static final Logger LOGGER = Logger.getLogger(LazyDance.class.getName());
+
+	/**
+	 * The reader to parse the figures with, or null once they have been parsed.
+	 */
+	private @Nullable LaTeXReader reader;
+	/**
+	 * The document the dance came from, or null once its figures have been parsed, so
+	 * that the document can be freed once every dance in it has been.
+	 */
+	private @Nullable String input;
+	/**
+	 * The index in the document of the first character after the dance's details.
+	 */
+	private final int start;
+	/**
+	 * The index one past the end of the dance's <pre>\end{scdance}</pre>.
+	 */
+	private final int end;
+
+	/**
+	 * @param header the dance's details, without any figures
+	 * @param reader the reader to parse the figures with
+	 * @param input  the document the dance came from
+	 * @param start  the index in the document of the first character after the details
+	 * @param end    the index one past the end of the dance
+	 */
+	LazyDance(final Dance header, final LaTeXReader reader, final String input,
+	          final int start, final int end) {
+		super(header.getTitle(), header.getSource(), header.getTempo(),
+				header.getTimes(), header.getLength(), header.getFormation());
+		this.reader = reader;
+		this.input = input;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return whether the figures have been parsed yet
+	 */
+	synchronized boolean isLoaded() {
+		return input == null;
+	}
+
+	/**
+	 * @return the list of figures etc. that make up the dance, parsing them first if
+	 * this is the first time they have been asked for
+	 * @throws IllegalStateException if the figures could not be parsed
+	 */
+	@Override
+	public synchronized List<DanceMember> getContents() {
+		final List<DanceMember> contents = super.getContents();
+		final String source = input;
+		final LaTeXReader parser = reader;
+		if (source != null && parser != null) {
+			try {
+				contents.addAll(parser.parseDanceBody(source, start, end));
+			} catch (final ParseException except) {
+				LOGGER.log(Level.SEVERE, "Error parsing figures of " + getTitle(),
+						except);
+				throw new IllegalStateException(
+						"Couldn't parse the figures of %s".formatted(getTitle()), except);
+			}
+			input = null;
+			reader = null;
+		}
+		return contents;
+	}
+
+	/**
+	 * @return the LaTeX of the dance's figures and its <pre>\end{scdance}</pre>, exactly
+	 * as read, or null if its figures have been parsed
+	 */
+	synchronized @Nullable String unparsedBody() {
+		return (input == null) ? null : input.substring(start, end);
+	}
+
+	/**
+	 * @return the document the dance came from, or null if its figures have been parsed
+	 */
+	private synchronized @Nullable String unparsedInput() {
+		return input;
+	}
+
+	/**
+	 * @return whether the given dance has the same details (everything but the figures)
+	 * as this one
+	 */
+	private boolean sameDetails(final Dance dance) {
+		//noinspection OverlyComplexBooleanExpression
+		return getTitle().equals(dance.getTitle()) &&
+				getSource().equals(dance.getSource()) &&
+				getTempo().equals(dance.getTempo()) && getTimes() == dance.getTimes() &&
+				getLength() == dance.getLength() &&
+				getFormation().equals(dance.getFormation());
+	}
+
+	/**
+	 * Comparing dances must neither parse their figures nor fail if they cannot be
+	 * parsed, so while a lazy dance's figures are unparsed it is equal only to another
+	 * such dance with the same details whose figures are the same text. Once its
+	 * figures are parsed, they are compared like any other dance's. {@link
+	 * DanceImpl#equals} defers to this method, so the comparison is symmetric, and
+	 * {@link DanceImpl#hashCode} depends only on the details, so it is the same before
+	 * and after parsing.
+	 *
+	 * @param obj an object
+	 * @return whether it is an identical dance
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof final Dance dance) || !sameDetails(dance)) {
+			return false;
+		}
+		final String text = unparsedInput();
+		if (obj instanceof final LazyDance other) {
+			final String otherText = other.unparsedInput();
+			if (text != null && otherText != null) {
+				return end - start == other.end - other.start &&
+						text.regionMatches(start, otherText, other.start, end - start);
+			} else if (text != null || otherText != null) {
+				return false;
+			}
+		} else if (text != null) {
+			return false;
+		}
+		// Once parsed, a lazy dance's figures are never parsed again.
+		return super.getContents().equals(dance.getContents());
+	}
+}
@@ -0,0 +1,97 @@
+package lovelace.tartan.latex;
+
+import java.util.ArrayList;
+import java.util.List;
+import lovelace.tartan.model.ProgramElement;
+import lovelace.tartan.model.ProgramMetadata;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The state of a single parse by {@link LaTeXReader}: the metadata and program read so
+ * far, and what we have seen of the document's front matter, which decides what an
+ * image or page break means. Keeping this out of the reader lets one reader parse any
+ * number of documents, even at once.
+ *
+ * @author Jonathan Lovelace
+ */
+final class ParseContext {
+	/**
+	 * The metadata read so far.
+	 */
+	private final ProgramMetadata metadata = new ProgramMetadata();
+	/**
+	 * The dances and intermissions read so far.
+	 */
+	private final List<ProgramElement> program = new ArrayList<>();
+	/**
+	 * When reading a program in parallel, where in the program each dance passed over by
+	 * the {@link SkeletonCursor} belongs; otherwise null.
+	 */
+	private final @Nullable List<Integer> danceSlots;
+	private boolean hadCover = false;
+	private boolean hadTitle = false;
+	private boolean nextIsBackCover = false;
+
+	ParseContext() {
+		this(null);
+	}
+
+	/**
+	 * @param danceSlots the list to record where each dance passed over belongs, or null
+	 *                   if the document's dances are not being passed over
+	 */
+	ParseContext(final @Nullable List<Integer> danceSlots) {
+		this.danceSlots = danceSlots;
+	}
+
+	ProgramMetadata metadata() {
+		return metadata;
+	}
+
+	List<ProgramElement> program() {
+		return program;
+	}
+
+	@Nullable List<Integer> danceSlots() {
+		return danceSlots;
+	}
+
+	/**
+	 * @return whether we have seen the cover (or something that must follow it)
+	 */
+	boolean hadCover() {
+		return hadCover;
+	}
+
+	void setHadCover() {
+		hadCover = true;
+	}
+
+	/**
+	 * @return whether we have seen the title page (or something that must follow it)
+	 */
+	boolean hadTitle() {
+		return hadTitle;
+	}
+
+	void setHadTitle() {
+		hadTitle = true;
+	}
+
+	/**
+	 * @return whether the next image is the back cover
+	 */
+	boolean nextIsBackCover() {
+		return nextIsBackCover;
+	}
+
+	void setNextIsBackCover() {
+		nextIsBackCover = true;
+	}
+
+	@Override
+	public String toString() {
+		return "ParseContext: %d elements (cover: %s, title: %s, inside back cover: %s)"
+				       .formatted(program.size(), hadCover, hadTitle, nextIsBackCover);
+	}
+}
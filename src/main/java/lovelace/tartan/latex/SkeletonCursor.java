@@ -0,0 +1,84 @@
+package lovelace.tartan.latex;
+
+/**
+ * A cursor over LaTeX input held in memory that passes over the spans of its top-level
+ * dances, returning a single {@link DanceSpans#PLACEHOLDER} character in place of each,
+ * so that the rest of the document can be parsed while the dances are parsed
+ * separately. Positions are still those in the whole input.
+ *
+ * @author Jonathan Lovelace
+ */
+final class SkeletonCursor implements LaTeXInput {
+	/**
+	 * The input we are walking.
+	 */
+	private final CharSequence input;
+	/**
+	 * The spans to pass over.
+	 */
+	private final DanceSpans spans;
+	/**
+	 * The index of the next character to be read.
+	 */
+	private int position = 0;
+	/**
+	 * How many spans we have passed over.
+	 */
+	private int skipped = 0;
+
+	/**
+	 * @param input the input to read
+	 * @param spans the spans of its top-level dances
+	 */
+	SkeletonCursor(final CharSequence input, final DanceSpans spans) {
+		this.input = input;
+		this.spans = spans;
+	}
+
+	/**
+	 * @return whether the next character is the start of a span
+	 */
+	private boolean atSpan() {
+		return skipped < spans.count() && position == spans.start(skipped);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return position >= input.length();
+	}
+
+	@Override
+	public char peek() {
+		return atSpan() ? DanceSpans.PLACEHOLDER : input.charAt(position);
+	}
+
+	@Override
+	public char pop() {
+		if (atSpan()) {
+			position = spans.end(skipped);
+			skipped++;
+			return DanceSpans.PLACEHOLDER;
+		}
+		final char retval = input.charAt(position);
+		position++;
+		return retval;
+	}
+
+	@Override
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * @return how many spans have been passed over so far
+	 */
+	int skipped() {
+		return skipped;
+	}
+
+	@Override
+	public String toString() {
+		return "SkeletonCursor at %d of %d, past %d of %d dances".formatted(position,
+				input.length(), skipped, spans.count());
+	}
+}
@@ -0,0 +1,125 @@
+package lovelace.tartan.latex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * LaTeX input read incrementally from a {@link Reader} through a fixed-size buffer, so
+ * that parsing a file does not require holding all of it in memory at once. Since the
+ * parser's methods do not otherwise deal with I/O, errors from the underlying reader
+ * are thrown as {@link UncheckedIOException}; {@link LaTeXReader} unwraps them.
+ *
+ * @author Jonathan Lovelace
+ */
+final class StreamingLaTeXInput implements LaTeXInput {
+	/**
+	 * The default size of the buffer, in characters.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 8192;
+	/**
+	 * The reader we are reading from.
+	 */
+	private final Reader source;
+	/**
+	 * The buffer holding characters read but not yet consumed.
+	 */
+	private final char[] buffer;
+	/**
+	 * The index in the buffer of the next character to be read.
+	 */
+	private int index = 0;
+	/**
+	 * How many characters in the buffer are valid.
+	 */
+	private int limit = 0;
+	/**
+	 * How many characters were consumed before those currently in the buffer.
+	 */
+	private int offset = 0;
+	/**
+	 * Whether the reader has reported end of input.
+	 */
+	private boolean exhausted = false;
+
+	/**
+	 * @param source     the reader to read from
+	 * @param bufferSize the size of the buffer to use
+	 */
+	StreamingLaTeXInput(final Reader source, final int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		this.source = source;
+		buffer = new char[bufferSize];
+	}
+
+	/**
+	 * @param source the reader to read from
+	 */
+	StreamingLaTeXInput(final Reader source) {
+		this(source, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * If the buffer has been entirely consumed, refill it from the reader.
+	 *
+	 * @return whether there is at least one character available
+	 */
+	private boolean fill() {
+		if (index < limit) {
+			return true;
+		} else if (exhausted) {
+			return false;
+		}
+		offset += limit;
+		index = 0;
+		limit = 0;
+		try {
+			while (limit == 0) {
+				final int read = source.read(buffer, 0, buffer.length);
+				if (read < 0) {
+					exhausted = true;
+					return false;
+				}
+				limit = read;
+			}
+		} catch (final IOException except) {
+			throw new UncheckedIOException(except);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return !fill();
+	}
+
+	@Override
+	public char peek() {
+		if (!fill()) {
+			throw new IllegalStateException("Read past end of input");
+		}
+		return buffer[index];
+	}
+
+	@Override
+	public char pop() {
+		if (!fill()) {
+			throw new IllegalStateException("Read past end of input");
+		}
+		final char retval = buffer[index];
+		index++;
+		return retval;
+	}
+
+	@Override
+	public int position() {
+		return offset + index;
+	}
+
+	@Override
+	public String toString() {
+		return "StreamingLaTeXInput at " + position();
+	}
+}
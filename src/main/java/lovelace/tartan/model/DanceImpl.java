@@ -175,12 +175,20 @@ public class DanceImpl implements Dance {
 	}
 
 	/**
+	 * A subclass that overrides this method decides for itself whether it equals a plain
+	 * dance, so that comparing the two gives the same answer whichever way round it is
+	 * done, and so that comparing them does not make it load figures it has put off
+	 * loading.
+	 *
 	 * @param obj an object
 	 * @return whether it is an identical dance.
 	 */
 	@Override
 	public boolean equals(final Object obj) {
-		if (obj instanceof final Dance dance) {
+		if (getClass() == DanceImpl.class && obj instanceof final DanceImpl other &&
+				    other.getClass() != DanceImpl.class) {
+			return other.equals(this);
+		} else if (obj instanceof final Dance dance) {
 			//noinspection OverlyComplexBooleanExpression
 			return title.equals(dance.getTitle()) && source.equals(dance.getSource()) &&
 				tempo.equals(dance.getTempo()) && times == dance.getTimes() &&
@@ -192,10 +200,11 @@ public class DanceImpl implements Dance {
 	}
 
 	/**
-	 * @return a hash value for this object
+	 * @return a hash value for this object, which depends only on the details and not
+	 * the figures, so that a subclass need not load its figures to compute it
 	 */
 	@Override
 	public int hashCode() {
-		return Objects.hash(title, source, tempo, times, length, formation, contents);
+		return Objects.hash(title, source, tempo, times, length, formation);
 	}
 }
@@ -0,0 +1,156 @@
+package lovelace.tartan.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests of writing and reading catalogue snapshots.
+ *
+ * @author Jonathan Lovelace
+ */
+public class CatalogueSnapshotTest {
+	/**
+	 * The size of the snapshot header: magic number, version, and the database's size,
+	 * modification time, and checksum.
+	 */
+	private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 3;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static DanceCatalogue catalogue() {
+		final DanceFormation longwise = new DanceFormation(1, "Longwise", "LW");
+		final DanceType reel = new DanceTypeImpl(1, "Reel", "R");
+		final DanceProgression progression = new DanceProgressionImpl(1, "2341");
+		return new DanceCatalogue.Builder()
+				       .add(1, "The Reel", 32, longwise, reel, 3, "Book 1", progression)
+				       .add(2, "Mairi's Wedding", 40, DanceFormation.UNKNOWN, reel, 3,
+						       "Book 2", DanceProgressionImpl.UNKNOWN)
+				       .add(1, "The Reel", 32, longwise, reel, 3, "Book 3", progression)
+				       .build();
+	}
+
+	private Path database(final String contents) throws IOException {
+		final Path retval = folder.getRoot().toPath().resolve("dances.db");
+		Files.writeString(retval, contents);
+		return retval;
+	}
+
+	private List<Path> snapshots() throws IOException {
+		try (final Stream<Path> stream = Files.list(folder.getRoot().toPath())) {
+			return stream.filter(file -> file.toString().endsWith(".catalogue")).toList();
+		}
+	}
+
+	private static void assertSameDances(final DanceCatalogue actual,
+	                                     final DanceCatalogue expected) {
+		assertThat("Snapshot should have every dance", actual.size(),
+				is(expected.size()));
+		for (int i = 0; i < expected.size(); i++) {
+			assertThat("Snapshot should have the same dances, in order", actual.get(i),
+					is(expected.get(i)));
+			assertThat("Snapshot should have every publication",
+					actual.sources(i), is(expected.sources(i)));
+		}
+	}
+
+	@Test
+	public void roundTripTest() throws IOException {
+		final Path db = database("version 1");
+		assertThat("No snapshot before one is written",
+				CatalogueSnapshot.forDatabase(db).read(), nullValue());
+		final DanceCatalogue expected = catalogue();
+		CatalogueSnapshot.forDatabase(db).write(expected);
+		final DanceCatalogue actual = CatalogueSnapshot.forDatabase(db).read();
+		assertThat("Snapshot should be read back", actual, notNullValue());
+		assertSameDances(actual, expected);
+	}
+
+	@Test
+	public void staleTest() throws IOException {
+		final Path db = database("version 1");
+		CatalogueSnapshot.forDatabase(db).write(catalogue());
+		final List<Path> first = snapshots();
+		final FileTime written = Files.getLastModifiedTime(db);
+		Files.writeString(db, "version 2");
+		Files.setLastModifiedTime(db,
+				FileTime.fromMillis(written.toMillis() + TimeUnit.MINUTES.toMillis(1)));
+		assertThat("Snapshot of a changed database should be ignored",
+				CatalogueSnapshot.forDatabase(db).read(), nullValue());
+		final DanceCatalogue changed = new DanceCatalogue.Builder()
+				                               .add(3, "Jig", 32, DanceFormation.UNKNOWN,
+						                               DanceTypeImpl.UNKNOWN, 2, "Book",
+						                               DanceProgressionImpl.UNKNOWN)
+				                               .build();
+		CatalogueSnapshot.forDatabase(db).write(changed);
+		final List<Path> second = snapshots();
+		assertThat("Only one snapshot should be left", second.size(), is(1));
+		assertThat("The new snapshot should not overwrite the old one's file",
+				second.getFirst().equals(first.getFirst()), is(false));
+		assertSameDances(CatalogueSnapshot.forDatabase(db).read(), changed);
+	}
+
+	@Test
+	public void unchangedTest() throws IOException {
+		final Path db = database("version 1");
+		final DanceCatalogue expected = catalogue();
+		CatalogueSnapshot.forDatabase(db).write(expected);
+		final FileTime written = Files.getLastModifiedTime(db);
+		// Change the contents without changing the size or modification time, which
+		// can only be noticed by reading the database.
+		Files.writeString(db, "version 2");
+		Files.setLastModifiedTime(db, written);
+		final DanceCatalogue actual = CatalogueSnapshot.forDatabase(db).read();
+		assertThat("A database of the same size and time should not be reread", actual,
+				notNullValue());
+		assertSameDances(actual, expected);
+		Files.setLastModifiedTime(db,
+				FileTime.fromMillis(written.toMillis() + TimeUnit.MINUTES.toMillis(1)));
+		assertThat("A database with a new modification time should be checked",
+				CatalogueSnapshot.forDatabase(db).read(), nullValue());
+	}
+
+	@Test
+	public void corruptTest() throws IOException {
+		final Path db = database("version 1");
+		CatalogueSnapshot.forDatabase(db).write(catalogue());
+		final Path snapshot = snapshots().getFirst();
+		final byte[] original = Files.readAllBytes(snapshot);
+
+		Files.write(snapshot, Arrays.copyOf(original, original.length - 3));
+		assertThat("A truncated snapshot should be ignored",
+				CatalogueSnapshot.forDatabase(db).read(), nullValue());
+
+		final List<Integer> offsets = new ArrayList<>();
+		// The number of dances, and the number of shapes, which comes right after it.
+		offsets.add(HEADER_SIZE);
+		offsets.add(HEADER_SIZE + Integer.BYTES);
+		// The length of the first shape's name, after the shape's ID.
+		offsets.add(HEADER_SIZE + Integer.BYTES * 3);
+		for (final int offset : offsets) {
+			for (final int value : new int[]{Integer.MAX_VALUE, -2}) {
+				final byte[] corrupt = original.clone();
+				ByteBuffer.wrap(corrupt).putInt(offset, value);
+				Files.write(snapshot, corrupt);
+				assertThat("A snapshot with a corrupt count should be ignored",
+						CatalogueSnapshot.forDatabase(db).read(), nullValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package lovelace.tartan.db;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests of the crib cache's bound on the total length of the cribs it holds.
+ *
+ * @author Jonathan Lovelace
+ */
+public class CribCacheTest {
+	@Test
+	public void evictionTest() {
+		final CribCache cache = new CribCache(10);
+		cache.put(1, "aaaa");
+		cache.put(2, "bbbb");
+		assertThat("Cached crib should be returned", cache.get(1), is("aaaa"));
+		cache.put(3, "cc");
+		assertThat("Cribs up to the capacity all fit", cache.statistics().evictions(),
+				is(0L));
+		cache.put(4, "d");
+		assertThat("Going over the capacity evicts the least recently used crib",
+				cache.get(2), nullValue());
+		assertThat("Recently used crib should be kept", cache.get(1), is("aaaa"));
+		assertThat("Recently added crib should be kept", cache.get(3), is("cc"));
+		assertThat("Newest crib should be kept", cache.get(4), is("d"));
+		assertThat("Weight is the total length of the cribs held",
+				cache.statistics().weight(), is(7L));
+		// Least to most recently used: 1, 3, 4.
+		cache.put(5, "eeeeeeeee");
+		assertThat("A heavy crib evicts as many as it takes to fit",
+				cache.statistics().entries(), is(2));
+		assertThat("Every eviction is counted", cache.statistics().evictions(), is(3L));
+		assertThat("Heavy crib should be kept", cache.get(5), is("eeeeeeeee"));
+		assertThat("Only as many as needed are evicted", cache.get(4), is("d"));
+		assertThat("The cache may be filled exactly", cache.statistics().weight(),
+				is(10L));
+	}
+
+	@Test
+	public void weightTest() {
+		final CribCache cache = new CribCache(10);
+		cache.put(1, "aaaaaa");
+		cache.put(1, "aa");
+		assertThat("Replacing a crib replaces its weight", cache.statistics().weight(),
+				is(2L));
+		cache.put(2, "bbbbbbbb");
+		assertThat("Nothing is evicted while the total fits",
+				cache.statistics().evictions(), is(0L));
+		cache.put(3, "ccccccccccc");
+		assertThat("A crib heavier than the capacity is not cached", cache.get(3),
+				nullValue());
+		assertThat("Caching nothing evicts nothing", cache.statistics().entries(),
+				is(2));
+		final CribCache empty = new CribCache(0);
+		empty.put(1, "a");
+		assertThat("A cache of no capacity holds nothing", empty.get(1), nullValue());
+		empty.put(2, "");
+		assertThat("But empty cribs weigh nothing", empty.get(2), is(""));
+		assertThrows(IllegalArgumentException.class, () -> new CribCache(-1));
+	}
+
+	@Test
+	public void statisticsTest() {
+		final CribCache cache = new CribCache(100);
+		cache.put(1, "crib");
+		cache.get(1);
+		cache.get(1);
+		cache.get(2);
+		final CacheStatistics statistics = cache.statistics();
+		assertThat("Hits are counted", statistics.hits(), is(2L));
+		assertThat("Misses are counted", statistics.misses(), is(1L));
+		assertThat("Capacity is reported", statistics.capacity(), is(100L));
+	}
+}
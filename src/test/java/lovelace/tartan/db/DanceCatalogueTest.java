@@ -0,0 +1,122 @@
+package lovelace.tartan.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests of building the dance catalogue and writing and reading it.
+ *
+ * @author Jonathan Lovelace
+ */
+public class DanceCatalogueTest {
+	private static final DanceFormation LONGWISE = new DanceFormation(1, "Longwise", "L");
+	private static final DanceType REEL = new DanceTypeImpl(1, "Reel", "R");
+	private static final DanceType JIG = new DanceTypeImpl(2, "Jig", "J");
+	private static final DanceProgression PROGRESSION =
+			new DanceProgressionImpl(1, "2,1");
+
+	/**
+	 * A catalogue in which dances appear in more than one publication, interleaved with
+	 * other dances, and one publication is listed twice for the same dance.
+	 */
+	@SuppressWarnings("StringOperationCanBeSimplified") // distinct but equal names
+	private static DanceCatalogue catalogue() {
+		return new DanceCatalogue.Builder()
+				.add(7, new String("The Duke of Perth"), 32, LONGWISE, REEL, 3, "Book A",
+						PROGRESSION)
+				.add(3, "The Frisky", 32, LONGWISE, JIG, 3, "Book B", PROGRESSION)
+				.add(7, "Duke of Perth", 40, DanceFormation.UNKNOWN, JIG, 2, "Book C",
+						DanceProgressionImpl.UNKNOWN)
+				.add(3, "The Frisky", 32, LONGWISE, JIG, 3, "Book A", PROGRESSION)
+				.add(7, "The Duke of Perth", 32, LONGWISE, REEL, 3, "Book A",
+						PROGRESSION)
+				.add(9, new String("The Duke of Perth"), 48, LONGWISE, REEL, 4, "Book B",
+						PROGRESSION)
+				.build();
+	}
+
+	@Test
+	public void mergeTest() {
+		final DanceCatalogue catalogue = catalogue();
+		assertThat("Rows with the same ID are one dance", catalogue.size(), is(3));
+		assertThat("Dances are in the order first added", catalogue.id(0), is(7));
+		assertThat("Dances are in the order first added", catalogue.id(1), is(3));
+		assertThat("Dances are in the order first added", catalogue.id(2), is(9));
+		assertThat("The first row's details are kept", catalogue.name(0),
+				is("The Duke of Perth"));
+		assertThat("The first row's details are kept", catalogue.length(0), is(32));
+		assertThat("The first row's details are kept", catalogue.type(0), is(REEL));
+		assertThat("The first row's details are kept", catalogue.shape(0),
+				is(LONGWISE));
+		assertThat("Equal names of different dances are shared", catalogue.name(2),
+				sameInstance(catalogue.name(0)));
+	}
+
+	@Test
+	public void publicationsTest() {
+		final DanceCatalogue catalogue = catalogue();
+		assertThat("Publications are in the order added, without duplicates",
+				catalogue.sources(0), is(List.of("Book A", "Book C")));
+		assertThat("Publications are in the order added", catalogue.sources(1),
+				is(List.of("Book B", "Book A")));
+		assertThat("A dance in one publication", catalogue.sources(2),
+				is(List.of("Book B")));
+		assertThat("Duplicate publications are not counted", catalogue.sourceCount(0),
+				is(2));
+		assertThat("The first publication is the source", catalogue.source(1),
+				is("Book B"));
+		assertThat("Rows report all publications", catalogue.get(0).sources(),
+				is(List.of("Book A", "Book C")));
+	}
+
+	private static byte[] write(final DanceCatalogue catalogue) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final DataOutputStream out = new DataOutputStream(bytes)) {
+			catalogue.writeTo(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void roundTripTest() throws IOException {
+		final DanceCatalogue original = catalogue();
+		final ByteBuffer buffer = ByteBuffer.wrap(write(original));
+		final DanceCatalogue copy = DanceCatalogue.readFrom(buffer);
+		assertThat("The whole catalogue is read", buffer.remaining(), is(0));
+		assertThat("Every dance is read", copy.size(), is(original.size()));
+		for (int i = 0; i < original.size(); i++) {
+			assertThat("Dance is read back", copy.id(i), is(original.id(i)));
+			assertThat("Dance is read back", copy.name(i), is(original.name(i)));
+			assertThat("Dance is read back", copy.length(i), is(original.length(i)));
+			assertThat("Dance is read back", copy.couples(i), is(original.couples(i)));
+			assertThat("Dance is read back", copy.shape(i), is(original.shape(i)));
+			assertThat("Dance is read back", copy.type(i), is(original.type(i)));
+			assertThat("Dance is read back", copy.progression(i),
+					is(original.progression(i)));
+			assertThat("Dance is read back", copy.sources(i), is(original.sources(i)));
+		}
+		assertThat("Shared names stay shared", copy.name(2), sameInstance(copy.name(0)));
+	}
+
+	@Test
+	public void corruptCountTest() throws IOException {
+		final byte[] bytes = write(catalogue());
+		ByteBuffer.wrap(bytes).putInt(0, Integer.MAX_VALUE);
+		assertThrows("An impossible dance count is rejected before allocating",
+				IllegalArgumentException.class,
+				() -> DanceCatalogue.readFrom(ByteBuffer.wrap(bytes)));
+		ByteBuffer.wrap(bytes).putInt(0, -3);
+		assertThrows("A negative dance count is rejected",
+				IllegalArgumentException.class,
+				() -> DanceCatalogue.readFrom(ByteBuffer.wrap(bytes)));
+	}
+}
@@ -0,0 +1,92 @@
+package lovelace.tartan.db;
+
+import java.text.ParseException;
+import java.util.List;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests of the parsing and evaluation of structured search queries.
+ *
+ * @author Jonathan Lovelace
+ */
+public class DanceQueryTest {
+	private static final DanceType REEL = new DanceTypeImpl(1, "Reel", "R");
+	private static final DanceType JIG = new DanceTypeImpl(2, "Jig", "J");
+	private static final DanceType STRATHSPEY = new DanceTypeImpl(3, "Strathspey", "S");
+
+	private static final DanceCatalogue CATALOGUE = new DanceCatalogue.Builder()
+			.add(10, "The Duke of Perth", 32, DanceFormation.UNKNOWN, REEL, 3, "Book",
+					DanceProgressionImpl.UNKNOWN)
+			.add(11, "Mairi's Wedding", 40, DanceFormation.UNKNOWN, REEL, 3, "Book",
+					DanceProgressionImpl.UNKNOWN)
+			.add(12, "The Flower of Glasgow", 32, DanceFormation.UNKNOWN, JIG, 3, "Book",
+					DanceProgressionImpl.UNKNOWN)
+			.add(13, "Set-Up Reel", 48, DanceFormation.UNKNOWN, REEL, 3, "Book",
+					DanceProgressionImpl.UNKNOWN)
+			.add(14, "Unknown Strathspey", -1, DanceFormation.UNKNOWN, STRATHSPEY, 3,
+					"Book", DanceProgressionImpl.UNKNOWN)
+			.build();
+
+	private static final TrigramIndex NAME_INDEX = new TrigramIndex(List.of(
+			"the duke of perth", "mairi's wedding", "the flower of glasgow",
+			"set-up reel", "unknown strathspey"));
+
+	/**
+	 * @return the ordinals of the dances matching the given query
+	 */
+	private static int[] search(final String query) throws ParseException {
+		return CATALOGUE.filter(DanceQuery.parse(query).compile(CATALOGUE,
+				SearchKeyNormalizer.DEFAULT, NAME_INDEX));
+	}
+
+	@Test
+	public void hyphenTest() throws ParseException {
+		assertThat("A leading hyphen negates a term", search("-reel"),
+				is(new int[]{0, 1, 2, 4}));
+		assertThat("A hyphen after a colon is part of the value", search("name:-up"),
+				is(new int[]{3}));
+		assertThat("A negative number is a value, not a negation", search("bars:-1"),
+				is(new int[]{4}));
+		assertThat("A negated field term", search("-type:reel"), is(new int[]{2, 4}));
+	}
+
+	@Test
+	public void quotationTest() throws ParseException {
+		assertThat("Quoted values may contain spaces", search("name:\"of perth\""),
+				is(new int[]{0}));
+		final ParseException except = assertThrows(ParseException.class,
+				() -> DanceQuery.parse("type:reel name:\"of perth"));
+		assertThat("Unterminated quotation is reported", except.getMessage(),
+				is("Unterminated quotation"));
+		assertThat("Unterminated quotation is reported at the opening quote",
+				except.getErrorOffset(), is(15));
+	}
+
+	@Test
+	public void precedenceTest() throws ParseException {
+		assertThat("OR binds more loosely than the implicit and",
+				search("bars:32 type:reel OR type:strathspey"), is(new int[]{0, 4}));
+		assertThat("Parentheses group alternatives",
+				search("bars:32 (type:reel OR type:strathspey)"), is(new int[]{0}));
+		assertThat("Lower-case or is a name term", search("type:reel or"),
+				is(new int[0]));
+		assertThrows("Unclosed parentheses are reported", ParseException.class,
+				() -> DanceQuery.parse("(type:reel OR type:jig"));
+	}
+
+	@Test
+	public void comparisonTest() throws ParseException {
+		assertThat("At most 32 bars, excluding unknown lengths", search("bars:<=32"),
+				is(new int[]{0, 2}));
+		assertThat("Fewer than 40 bars", search("bars:<40"), is(new int[]{0, 2}));
+		assertThat("More than 32 bars", search("length:>32"), is(new int[]{1, 3}));
+		assertThat("At least 40 bars", search("bars:>=40"), is(new int[]{1, 3}));
+		assertThat("Exactly 32 bars", search("bars:32"), is(new int[]{0, 2}));
+		assertThrows("Non-numeric lengths are reported", ParseException.class,
+				() -> DanceQuery.parse("bars:<=long"));
+	}
+}
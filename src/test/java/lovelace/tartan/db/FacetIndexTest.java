@@ -0,0 +1,111 @@
+package lovelace.tartan.db;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests of narrowing search results by facets and counting the dances with each value.
+ *
+ * @author Jonathan Lovelace
+ */
+public class FacetIndexTest {
+	private static final FacetValue REEL = new FacetValue(Facet.TYPE, "Reel");
+	private static final FacetValue JIG = new FacetValue(Facet.TYPE, "Jig");
+	private static final FacetValue STRATHSPEY = new FacetValue(Facet.TYPE, "Strathspey");
+	private static final FacetValue TWO = new FacetValue(Facet.COUPLES, "2");
+	private static final FacetValue THREE = new FacetValue(Facet.COUPLES, "3");
+	private static final FacetValue FOUR = new FacetValue(Facet.COUPLES, "4");
+	private static final FacetValue OTHER = new FacetValue(Facet.COUPLES, "Other");
+	private static final FacetValue BARS_32 = new FacetValue(Facet.BARS, "32");
+	private static final FacetValue BARS_40 = new FacetValue(Facet.BARS, "40");
+
+	private static DanceCatalogue.Builder add(final DanceCatalogue.Builder builder,
+	                                          final int id, final DanceType type,
+	                                          final int length, final int couples) {
+		return builder.add(id, "Dance " + id, length, DanceFormation.UNKNOWN, type,
+				couples, "Book", DanceProgressionImpl.UNKNOWN);
+	}
+
+	private static final FacetIndex INDEX;
+
+	static {
+		final DanceType reel = new DanceTypeImpl(1, "Reel", "R");
+		final DanceType jig = new DanceTypeImpl(2, "Jig", "J");
+		final DanceType strathspey = new DanceTypeImpl(3, "Strathspey", "S");
+		final DanceCatalogue.Builder builder = new DanceCatalogue.Builder();
+		add(builder, 0, reel, 32, 3);
+		add(builder, 1, reel, 40, 3);
+		add(builder, 2, jig, 32, 4);
+		add(builder, 3, jig, 32, -1);
+		add(builder, 4, strathspey, 32, 2);
+		INDEX = new FacetIndex(builder.build());
+	}
+
+	private static BitSet bits(final int... ordinals) {
+		final BitSet retval = new BitSet();
+		for (final int ordinal : ordinals) {
+			retval.set(ordinal);
+		}
+		return retval;
+	}
+
+	@Test
+	public void valuesTest() {
+		assertThat("Names are in alphabetical order", INDEX.values(Facet.TYPE),
+				is(List.of(JIG, REEL, STRATHSPEY)));
+		assertThat("Numbers are in numeric order, then other values",
+				INDEX.values(Facet.COUPLES), is(List.of(TWO, THREE, FOUR, OTHER)));
+		assertThat("Only values some dance has are listed", INDEX.values(Facet.BARS),
+				is(List.of(BARS_32, BARS_40)));
+	}
+
+	@Test
+	public void matchingTest() {
+		assertThat("No selection matches everything", INDEX.matching(Set.of(), null),
+				is(bits(0, 1, 2, 3, 4)));
+		assertThat("Values of one facet are alternatives",
+				INDEX.matching(Set.of(REEL, JIG), null), is(bits(0, 1, 2, 3)));
+		assertThat("Values of different facets must all match",
+				INDEX.matching(Set.of(REEL, JIG, THREE), null), is(bits(0, 1)));
+		assertThat("The ignored facet's values do not constrain",
+				INDEX.matching(Set.of(REEL, JIG, THREE), Facet.COUPLES),
+				is(bits(0, 1, 2, 3)));
+	}
+
+	@Test
+	public void countsTest() {
+		final Map<FacetValue, Integer> counts =
+				INDEX.counts(bits(0, 1, 2, 3, 4), Set.of(REEL));
+		assertThat("A facet's counts ignore its own selection", counts.get(JIG), is(2));
+		assertThat("A facet's counts ignore its own selection", counts.get(REEL), is(2));
+		assertThat("A facet's counts ignore its own selection", counts.get(STRATHSPEY),
+				is(1));
+		assertThat("Other facets' counts are among the selection", counts.get(THREE),
+				is(2));
+		assertThat("Other facets' counts are among the selection", counts.get(FOUR),
+				is(0));
+		assertThat("Other facets' counts are among the selection", counts.get(BARS_40),
+				is(1));
+		assertThat("Every value of every facet is counted", counts.size(), is(11));
+	}
+
+	@Test
+	public void countsBaseTest() {
+		final Map<FacetValue, Integer> counts =
+				INDEX.counts(bits(1, 2, 3, 4), Set.of(REEL, JIG));
+		assertThat("Only dances in the base set are counted", counts.get(REEL), is(1));
+		assertThat("Only dances in the base set are counted", counts.get(JIG), is(2));
+		assertThat("Only dances in the base set are counted", counts.get(THREE), is(1));
+		assertThat("Unknown numbers are counted as Other", counts.get(OTHER), is(1));
+		assertThat("Dances excluded by another facet are not counted", counts.get(TWO),
+				is(0));
+		assertThat("Dances excluded by another facet are not counted",
+				counts.get(BARS_32), is(2));
+	}
+}
@@ -0,0 +1,84 @@
+package lovelace.tartan.db;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests of the search for names spelled almost like a search term.
+ *
+ * @author Jonathan Lovelace
+ */
+public class FuzzyIndexTest {
+	private static final FuzzyIndex INDEX = new FuzzyIndex(List.of("mairi's wedding",
+			"the duke of perth", "the flower of glasgow", "hooper's jig", "jig",
+			"the reel", "the reek"));
+
+	@Test
+	public void toleranceTest() {
+		assertThat("Words of two letters must match exactly", INDEX.search("of"),
+				is(new int[]{1, 2}));
+		assertThat("Words of two letters must match exactly", INDEX.search("ox"),
+				is(new int[0]));
+		assertThat("Words of up to five letters may have one edit", INDEX.search("dukx"),
+				is(new int[]{1}));
+		assertThat("Words of up to five letters may not have two edits",
+				INDEX.search("dxkx"), is(new int[0]));
+		assertThat("Longer words may have two edits", INDEX.search("gxxsgow"),
+				is(new int[]{2}));
+		assertThat("Longer words may not have three edits", INDEX.search("gxxxgow"),
+				is(new int[0]));
+	}
+
+	@Test
+	public void orderTest() {
+		assertThat("Exact matches before those needing edits", INDEX.search("reek"),
+				is(new int[]{6, 5}));
+		assertThat("Ties in ascending order", INDEX.search("jog"), is(new int[]{3, 4}));
+		assertThat("Distances are totalled over the term's words",
+				INDEX.distances("the reex"), is(Map.of(5, 1, 6, 1)));
+		assertThat("Each key is counted at its closest word",
+				INDEX.distances("perth"), is(Map.of(1, 0)));
+	}
+
+	@Test
+	public void wordsTest() {
+		assertThat("Every word of the term must match", INDEX.search("duke perth"),
+				is(new int[]{1}));
+		assertThat("Every word of the term must match", INDEX.search("duke glasgow"),
+				is(new int[0]));
+		assertThat("Apostrophes are dropped", INDEX.search("mairis"),
+				is(new int[]{0}));
+		assertThat("Apostrophes are dropped", INDEX.search("hooper's"),
+				is(new int[]{3}));
+		assertThat("A term without words matches nothing", INDEX.search("-"),
+				is(new int[0]));
+	}
+
+	@Test
+	public void partialTest() {
+		assertThat("The last word may be unfinished", INDEX.search("mairis wed"),
+				is(new int[]{0}));
+		assertThat("A word followed by a space is finished", INDEX.search("mairis wed "),
+				is(new int[0]));
+		assertThat("Only the last word may be unfinished", INDEX.search("wed mairis"),
+				is(new int[0]));
+		assertThat("An unfinished word may have typos", INDEX.search("the flx"),
+				is(new int[]{2}));
+		assertThat("An unfinished word is tolerated as much as a finished one",
+				INDEX.search("the fxx"), is(new int[0]));
+		assertThat("Matching the beginning of a word counts no edits",
+				INDEX.distances("the re"), is(Map.of(5, 0, 6, 0)));
+		assertThat("Apostrophes are dropped from unfinished words",
+				INDEX.search("hooper'"), is(new int[]{3}));
+	}
+
+	@Test
+	public void emptyTest() {
+		assertThat("An empty index matches nothing",
+				new FuzzyIndex(List.of()).search("reel"), is(new int[0]));
+	}
+}
@@ -0,0 +1,100 @@
+package lovelace.tartan.db;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests of the ranking of search results.
+ *
+ * @author Jonathan Lovelace
+ */
+public class RelevanceRankerTest {
+	/**
+	 * @param names      the dances' names, which are also their search keys
+	 * @param popularity how many publications each dance has appeared in
+	 */
+	private static DanceCatalogue catalogue(final List<String> names,
+	                                        final int... popularity) {
+		final DanceCatalogue.Builder builder = new DanceCatalogue.Builder();
+		for (int i = 0; i < names.size(); i++) {
+			for (int source = 0; source < popularity[i]; source++) {
+				builder.add(i, names.get(i), 32, DanceFormation.UNKNOWN,
+						DanceTypeImpl.UNKNOWN, 3, "Book " + source,
+						DanceProgressionImpl.UNKNOWN);
+			}
+		}
+		return builder.build();
+	}
+
+	private static int[] all(final List<String> keys) {
+		return IntStream.range(0, keys.size()).toArray();
+	}
+
+	@Test
+	public void tierTest() {
+		final List<String> keys =
+				List.of("jig", "freely", "the reel", "reel of the 51st", "reel");
+		final RelevanceRanker ranker =
+				new RelevanceRanker(keys, catalogue(keys, 5, 4, 3, 2, 1));
+		assertThat("Exact, prefix, word start, substring, then others",
+				ranker.rank(all(keys), "reel"), is(new int[]{4, 3, 2, 1, 0}));
+	}
+
+	@Test
+	public void popularityTest() {
+		final List<String> keys = List.of("reel one", "reel two", "reel three");
+		final RelevanceRanker ranker =
+				new RelevanceRanker(keys, catalogue(keys, 1, 3, 3));
+		assertThat("More popular dances first, ties in their original order",
+				ranker.rank(all(keys), "reel"), is(new int[]{1, 2, 0}));
+	}
+
+	@Test
+	public void cutoffTest() {
+		final int count = RelevanceRanker.RANKED + 50;
+		final List<String> keys = IntStream.range(0, count).mapToObj(i -> "reel")
+				                          .toList();
+		final int[] popularity = new int[count];
+		Arrays.fill(popularity, 1);
+		popularity[count - 1] = 2;
+		final RelevanceRanker ranker =
+				new RelevanceRanker(keys, catalogue(keys, popularity));
+		final int[] expected = IntStream.concat(IntStream.of(count - 1),
+				IntStream.range(0, count - 1)).toArray();
+		assertThat("The best are ranked first, and the rest keep their order",
+				ranker.rank(all(keys), "reel"), is(expected));
+		final int[] reversed =
+				IntStream.range(0, count).map(i -> count - 1 - i).toArray();
+		final int[] result = ranker.rank(reversed, "reel");
+		assertThat("The most popular is first", result[0], is(count - 1));
+		assertThat("Only the best are ranked",
+				Arrays.copyOfRange(result, 1, RelevanceRanker.RANKED),
+				is(IntStream.range(0, RelevanceRanker.RANKED - 1)
+						   .map(i -> count - 2 - i).toArray()));
+		assertThat("Those not ranked keep the order they came in",
+				Arrays.copyOfRange(result, RelevanceRanker.RANKED, count),
+				is(IntStream.range(RelevanceRanker.RANKED, count)
+						   .map(i -> count - 1 - i).toArray()));
+	}
+
+	@Test
+	public void fuzzyDistanceTest() {
+		final List<String> keys = List.of("strathpsey", "strathspay", "strathspex",
+				"strathspey reel");
+		final RelevanceRanker ranker =
+				new RelevanceRanker(keys, catalogue(keys, 5, 1, 3, 1));
+		final Map<Integer, Integer> distances =
+				new FuzzyIndex(keys).distances("strathspey");
+		assertThat("The two-edit match is more popular, but needs more edits",
+				distances, is(Map.of(0, 2, 1, 1, 2, 1, 3, 0)));
+		assertThat("Fewer edits first; popularity only breaks ties",
+				ranker.rank(FuzzyIndex.closestFirst(distances), "strathspey",
+						distances::get), is(new int[]{3, 2, 1, 0}));
+	}
+}
@@ -0,0 +1,48 @@
+package lovelace.tartan.db;
+
+import java.util.List;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests of the folding of dance names and search terms into search keys.
+ *
+ * @author Jonathan Lovelace
+ */
+public class SearchKeyNormalizerTest {
+	@Test
+	public void foldingTest() {
+		final SearchKeyNormalizer normalizer = new SearchKeyNormalizer(List.of());
+		assertThat("Case is folded", normalizer.normalize("The Duke Of PERTH"),
+				is("the duke of perth"));
+		assertThat("Accents are dropped", normalizer.normalize("Ròidh na Mìltean"),
+				is("roidh na miltean"));
+		assertThat("Characters without a single lower-case form are folded",
+				normalizer.normalize("STRASSE Straße"), is("strasse strasse"));
+		assertThat("Curly apostrophes are straightened",
+				normalizer.normalize("Mairi’s Wedding ‘Reel’"),
+				is("mairi's wedding 'reel'"));
+		assertThat("Compatibility forms are decomposed", normalizer.normalize("ﬁddler"),
+				is("fiddler"));
+	}
+
+	@Test
+	public void equivalenceTest() {
+		final SearchKeyNormalizer normalizer = SearchKeyNormalizer.DEFAULT;
+		assertThat("Mc is treated as Mac", normalizer.normalize("The McDonald Reel"),
+				is("the macdonald reel"));
+		assertThat("M' is treated as Mac", normalizer.normalize("M’Donald’s Reel"),
+				is("macdonald's reel"));
+		assertThat("Spellings of a name share a key",
+				normalizer.normalize("MacDonald"), is(normalizer.normalize("mcdonald")));
+		assertThat("Equivalences apply only at the start of a word",
+				normalizer.normalize("Tomcat Pim'm"), is("tomcat pim'm"));
+		assertThat("Words after punctuation are words too",
+				normalizer.normalize("(Mcgregor)-Mcnab"), is("(macgregor)-macnab"));
+		assertThrows(IllegalArgumentException.class,
+				() -> new SearchKeyNormalizer.Equivalence("", "mac"));
+	}
+}
@@ -0,0 +1,70 @@
+package lovelace.tartan.db;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests of the trigram index behind substring searches.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TrigramIndexTest {
+	private static final List<String> KEYS = List.of("the reel of the 51st division",
+			"mairi's wedding", "the duke of perth", "reel", "the abc and the bcd",
+			"abcd", "aaaa", "", "the wedding reel", "ree");
+
+	/**
+	 * @return the ordinals of the keys containing the term, found by checking each one
+	 */
+	private static int[] scan(final String term) {
+		return IntStream.range(0, KEYS.size()).filter(i -> KEYS.get(i).contains(term))
+				       .toArray();
+	}
+
+	@Test
+	public void intersectionTest() {
+		final TrigramIndex index = new TrigramIndex(KEYS);
+		for (final String term : List.of("reel", "wedding", "the", "of the",
+				"wedding reel", "51st", "perth")) {
+			assertThat("Keys containing every trigram and the term itself: " + term,
+					index.search(term), is(scan(term)));
+		}
+	}
+
+	@Test
+	public void verificationTest() {
+		final TrigramIndex index = new TrigramIndex(KEYS);
+		assertThat("A key with all of a term's trigrams, but not together, is no match",
+				index.search("abcd"), is(new int[]{5}));
+		assertThat("A term repeating a trigram needs it only once in a key",
+				index.search("aaaa"), is(new int[]{6}));
+		assertThat("A term with a trigram no key has matches nothing",
+				index.search("xyz"), is(new int[0]));
+		assertThat("A term with one missing trigram matches nothing",
+				index.search("reels"), is(new int[0]));
+	}
+
+	@Test
+	public void shortTermTest() {
+		final TrigramIndex index = new TrigramIndex(KEYS);
+		for (final String term : List.of("re", "a", "'s", " ")) {
+			assertThat("Terms too short for a trigram are checked against every key",
+					index.search(term), is(scan(term)));
+		}
+		assertThat("An empty term matches every key", index.search(""),
+				is(IntStream.range(0, KEYS.size()).toArray()));
+	}
+
+	@Test
+	public void emptyIndexTest() {
+		final TrigramIndex index = new TrigramIndex(List.of());
+		assertThat("An empty index matches nothing", index.search("reel"),
+				is(new int[0]));
+		assertThat("An empty index matches nothing, even for short terms",
+				index.search("r"), is(new int[0]));
+	}
+}
@@ -1,12 +1,20 @@
 package lovelace.tartan.latex;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
+import lovelace.tartan.model.Dance;
 import lovelace.tartan.model.DanceImpl;
 import lovelace.tartan.model.Figure;
 import lovelace.tartan.model.Intermission;
@@ -21,8 +29,10 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameter;
 import org.junit.runners.Parameterized.Parameters;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
 
 /**
  * Some tests for LaTeX reading and writing code.
@@ -185,6 +195,322 @@ public class LaTeXTest {
 				is(startingProgram));
 	}
 
+	@Test
+	@SuppressWarnings("HardcodedFileSeparator") // '/' is cross-platform in Java!
+	public void streamingTest() throws Exception {
+		final List<ProgramElement> startingProgram = Arrays.asList(
+				new DanceImpl("Random Reel", "A. Mouse", "Reel", 6, 40, "2C (3C set)",
+						new Figure("1s & 2s dance the Targe:", "1-8"),
+						new NamedFigure(new Figure(
+								"1L & 2L turn RH 3/4 <b>while</b> Men dance 1/4 round",
+								"1-2"),
+								new Figure("1M with 2L & 1L with 2M full turn", "3-4")),
+						new Figure("remainder of dance description here")),
+				new Intermission(),
+				new DanceImpl("Odd Example", "Bk -1", "Strathspey", 3, 32, "3C Triangle",
+						new Figure("dance description here")));
+		final ProgramMetadata startingMetadata = makeTestMetadata();
+		startingMetadata.setCoverImage(Paths.get("path/to/coverImage"));
+		startingMetadata.setTitleOnCover(titleOnCover);
+		startingMetadata.setPrintAuldLangSyne(printAuldLangSyne);
+		final StringBuilder builder = new StringBuilder(
+				LaTeXWriter.estimateSize(startingProgram, startingMetadata));
+		LaTeXWriter.writeLaTeXProgram(builder, startingProgram, startingMetadata);
+		// Hand the parser only a few characters at a time, so its buffer is refilled
+		// in the middle of commands and blocks.
+		final Pair<@NonNull ProgramMetadata, @NonNull List<@NonNull ProgramElement>>
+				deserializationResults = new LaTeXReader().readLaTeXProgram(
+						new TricklingReader(builder.toString()));
+		assertThat("Metadata should be read correctly from a stream",
+				deserializationResults.getFirst(), is(startingMetadata));
+		assertThat("Dances should be read correctly from a stream",
+				deserializationResults.getSecond(), is(startingProgram));
+	}
+
+	@Test
+	@SuppressWarnings("HardcodedFileSeparator") // '/' is cross-platform in Java!
+	public void parallelTest() throws Exception {
+		final List<ProgramElement> startingProgram = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			startingProgram.add(new DanceImpl("Dance " + i, "Book " + i, "Reel", 8, 32,
+					"2C (4C set)", new Figure("1s cast off {one place}", "1-8"),
+					new NamedFigure(new Figure("1s turn RH <b>while</b> 2s set", "9-12"),
+							new Figure("all set 50%", "13-16")),
+					new Figure("remainder of dance description here")));
+			if (i % 5 == 4) {
+				startingProgram.add(new Intermission("Break " + i));
+			}
+		}
+		final ProgramMetadata startingMetadata = makeTestMetadata();
+		startingMetadata.setCoverImage(Paths.get("path/to/coverImage"));
+		startingMetadata.setBackCoverImage(Paths.get("path/to/backCoverImage"));
+		startingMetadata.setTitleOnCover(titleOnCover);
+		startingMetadata.setPrintAuldLangSyne(printAuldLangSyne);
+		final StringBuilder builder = new StringBuilder(
+				LaTeXWriter.estimateSize(startingProgram, startingMetadata));
+		LaTeXWriter.writeLaTeXProgram(builder, startingProgram, startingMetadata);
+		final String serialized = builder.toString();
+		// Break the eighth dance and the text after the last; the parallel reader
+		// should report the same (earlier) error as the sequential one.
+		final int eighth = serialized.indexOf("{Dance 7}");
+		final String broken = serialized.substring(0, eighth) + "!" +
+				serialized.substring(eighth, serialized.lastIndexOf("\\end{document}")) +
+				"!";
+		final ParseException expected = assertThrows(ParseException.class,
+				() -> new LaTeXReader().readLaTeXProgram(broken));
+		// An explicit pool, so the dances are parsed in parallel even on a single core
+		try (final ForkJoinPool pool = new ForkJoinPool(4)) {
+			final Pair<@NonNull ProgramMetadata, @NonNull List<@NonNull ProgramElement>>
+					deserializationResults =
+					new LaTeXReader().readLaTeXProgramInParallel(serialized, pool);
+			assertThat("Metadata should be read correctly in parallel",
+					deserializationResults.getFirst(), is(startingMetadata));
+			assertThat("Dances should be read correctly and in order in parallel",
+					deserializationResults.getSecond(), is(startingProgram));
+			final ParseException actual = assertThrows(ParseException.class,
+					() -> new LaTeXReader().readLaTeXProgramInParallel(broken, pool));
+			assertThat("Parallel reader should report the first error",
+					actual.getMessage(), is(expected.getMessage()));
+			assertThat("Parallel reader should report the first error's offset",
+					actual.getErrorOffset(), is(expected.getErrorOffset()));
+		}
+	}
+
+	@Test
+	public void namedFigureQuotingTest() throws Exception {
+		// Braces in a named figure's figures are escaped, and need not be balanced.
+		final List<ProgramElement> startingProgram = List.of(
+				new DanceImpl("Brace Reel", "Bk 1", "Reel", 8, 32, "2C (4C set)",
+						new NamedFigure(new Figure("1s cast {one place", "1-4"),
+								new Figure("2s & 1s <i>set</i>} and turn ½", "5-8")),
+						new Figure("remainder of dance description here")));
+		final ProgramMetadata startingMetadata = makeTestMetadata();
+		startingMetadata.setTitleOnCover(titleOnCover);
+		startingMetadata.setPrintAuldLangSyne(printAuldLangSyne);
+		final StringBuilder builder = new StringBuilder(
+				LaTeXWriter.estimateSize(startingProgram, startingMetadata));
+		LaTeXWriter.writeLaTeXProgram(builder, startingProgram, startingMetadata);
+		assertThat("Named figures should be read with their contents intact",
+				new LaTeXReader().readLaTeXProgram(builder.toString()).getSecond(),
+				is(startingProgram));
+		assertThat("Named figures should be read intact from a stream",
+				new LaTeXReader().readLaTeXProgram(
+						new TricklingReader(builder.toString())).getSecond(),
+				is(startingProgram));
+	}
+
+	@Test
+	@SuppressWarnings("HardcodedFileSeparator") // '/' is cross-platform in Java!
+	public void lazyTest() throws Exception {
+		final List<ProgramElement> startingProgram = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			startingProgram.add(new DanceImpl("Dance " + i, "Book " + i, "Jig", 8, 32,
+					"2C (4C set)", new Figure("1s cast off {one place}", "1-8"),
+					new NamedFigure(new Figure("1s turn RH", "9-12"),
+							new Figure("all set", "13-16")),
+					new Figure("remainder of dance description here")));
+		}
+		startingProgram.add(1, new Intermission("Break"));
+		final ProgramMetadata startingMetadata = makeTestMetadata();
+		startingMetadata.setCoverImage(Paths.get("path/to/coverImage"));
+		startingMetadata.setTitleOnCover(titleOnCover);
+		startingMetadata.setPrintAuldLangSyne(printAuldLangSyne);
+		final StringBuilder builder = new StringBuilder();
+		LaTeXWriter.writeLaTeXProgram(builder, startingProgram, startingMetadata);
+		final String serialized = builder.toString();
+		final Pair<@NonNull ProgramMetadata, @NonNull List<@NonNull ProgramElement>>
+				deserializationResults =
+				new LaTeXReader().readLaTeXProgramLazily(serialized);
+		assertThat("Metadata should be read correctly when reading lazily",
+				deserializationResults.getFirst(), is(startingMetadata));
+		final ProgramElement first = deserializationResults.getSecond().getFirst();
+		assertThat("Dances should be read lazily", first, instanceOf(LazyDance.class));
+		assertThat("Figures should not be parsed until asked for",
+				((LazyDance) first).isLoaded(), is(false));
+		final List<ProgramElement> again =
+				new LaTeXReader().readLaTeXProgramLazily(serialized).getSecond();
+		assertThat("Dances read twice from the same text should be equal",
+				again, is(deserializationResults.getSecond()));
+		assertThat("Equal dances should have equal hash codes",
+				again.getFirst().hashCode(), is(first.hashCode()));
+		assertThat("Comparing dances should not parse their figures",
+				((LazyDance) first).isLoaded(), is(false));
+		final StringBuilder rewritten = new StringBuilder();
+		LaTeXWriter.writeLaTeXProgram(rewritten, again, startingMetadata);
+		assertThat("Unparsed dances should be written back as they were read",
+				rewritten.toString(), is(serialized));
+		assertThat("Writing unparsed dances should not parse their figures",
+				((LazyDance) again.getFirst()).isLoaded(), is(false));
+		final Dance eager = (Dance) startingProgram.getFirst();
+		assertThat("An unparsed dance should not equal an eagerly read one",
+				first.equals(eager), is(false));
+		assertThat("An eagerly read dance should not equal an unparsed one",
+				eager.equals(first), is(false));
+		assertThat("Lazily and eagerly read dances should have equal hash codes",
+				first.hashCode(), is(eager.hashCode()));
+		assertThat("Comparing with an eagerly read dance should not parse figures",
+				((LazyDance) first).isLoaded(), is(false));
+		for (final ProgramElement element : deserializationResults.getSecond()) {
+			if (element instanceof final Dance dance) {
+				dance.getContents();
+			}
+		}
+		assertThat("Figures should be parsed once asked for",
+				((LazyDance) first).isLoaded(), is(true));
+		assertThat("Parsing the figures should not change the hash code",
+				first.hashCode(), is(again.getFirst().hashCode()));
+		assertThat("A parsed dance should equal an eagerly read one", first.equals(eager),
+				is(true));
+		assertThat("An eagerly read dance should equal a parsed one", eager.equals(first),
+				is(true));
+		assertThat("Parsed and eagerly read dances should have equal hash codes",
+				first.hashCode(), is(eager.hashCode()));
+		assertThat("Dances should be read correctly and in order when reading lazily",
+				deserializationResults.getSecond(), is(startingProgram));
+		// Break a figure of the second dance; this should be reported only when its
+		// figures are asked for, with the error reading it eagerly would report.
+		final int second =
+				serialized.indexOf("\\scfigure", serialized.indexOf("{Dance 1}"));
+		final String broken = serialized.substring(0, second) + "!" +
+				serialized.substring(second);
+		final ParseException expected = assertThrows(ParseException.class,
+				() -> new LaTeXReader().readLaTeXProgram(broken));
+		final List<ProgramElement> lazyProgram =
+				new LaTeXReader().readLaTeXProgramLazily(broken).getSecond();
+		final Dance brokenDance = (Dance) lazyProgram.get(2);
+		assertThat("Details of a dance with broken figures should be read",
+				brokenDance.getTitle(), is("Dance 1"));
+		assertThat("A dance with broken figures should still be comparable",
+				brokenDance.equals(lazyProgram.get(0)), is(false));
+		assertThat("A dance with broken figures should still be hashable",
+				brokenDance.hashCode(), is(brokenDance.hashCode()));
+		assertThat("Comparing an eagerly read dance with a broken one should not fail",
+				startingProgram.get(2).equals(brokenDance), is(false));
+		final IllegalStateException actual = assertThrows(IllegalStateException.class,
+				brokenDance::getContents);
+		assertThat("Error in figures should be reported on access",
+				actual.getCause(), instanceOf(ParseException.class));
+		assertThat("Error in figures should be the one an eager reader reports",
+				((ParseException) actual.getCause()).getErrorOffset(),
+				is(expected.getErrorOffset()));
+		final StringBuilder saved = new StringBuilder();
+		LaTeXWriter.writeLaTeXProgram(saved, lazyProgram, startingMetadata);
+		assertThat("A dance with broken figures should be saved as it was read",
+				saved.toString(), is(broken));
+		brokenDance.setTitle("Renamed");
+		saved.setLength(0);
+		LaTeXWriter.writeLaTeXProgram(saved, lazyProgram, startingMetadata);
+		assertThat("Changes to the details of a broken dance should be saved",
+				saved.toString(), is(broken.replace("{Dance 1}", "{Renamed}")));
+	}
+
+	@Test
+	@SuppressWarnings("HardcodedFileSeparator") // '/' is cross-platform in Java!
+	public void sharedReaderTest() throws Exception {
+		// Documents whose front matter differs, so any state leaking between parses
+		// would show up in their metadata.
+		final List<String> documents = new ArrayList<>();
+		final List<ProgramMetadata> expected = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			final ProgramMetadata metadata = makeTestMetadata();
+			metadata.setTitleOnCover(i % 2 == 0 ? titleOnCover : !titleOnCover);
+			metadata.setPrintAuldLangSyne(printAuldLangSyne);
+			if (i % 4 < 2) {
+				metadata.setCoverImage(Paths.get("path/to/cover" + i));
+			}
+			final List<ProgramElement> program = List.of(
+					new DanceImpl("Dance " + i, "Book", "Jig", 8, 32, "2C (4C set)",
+							new Figure("dance description here")));
+			final StringBuilder builder = new StringBuilder();
+			LaTeXWriter.writeLaTeXProgram(builder, program, metadata);
+			documents.add(builder.toString());
+			expected.add(metadata);
+		}
+		final LaTeXReader reader = new LaTeXReader();
+		try (final ForkJoinPool pool = new ForkJoinPool(4)) {
+			final List<ForkJoinTask<ProgramMetadata>> tasks = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				final String document = documents.get(i % documents.size());
+				tasks.add(pool.submit(
+						() -> reader.readLaTeXProgram(document).getFirst()));
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				assertThat("A shared reader should parse each document independently",
+						tasks.get(i).get(), is(expected.get(i % expected.size())));
+			}
+		}
+	}
+
+	/**
+	 * A reader that never returns more than a few characters from a single read.
+	 */
+	private static final class TricklingReader extends FilterReader {
+		private TricklingReader(final String contents) {
+			super(new StringReader(contents));
+		}
+
+		@Override
+		public int read(final char[] buf, final int off, final int len)
+				throws IOException {
+			return super.read(buf, off, Math.min(len, 7));
+		}
+	}
+
+	/**
+	 * The chain of replacements {@link LaTeXWriter} used to make before it escaped text
+	 * in a single pass, kept as an oracle for the current implementation.
+	 */
+	@SuppressWarnings("HardcodedFileSeparator") // Not a file separator
+	private static String legacyQuoted(final String string) {
+		return string.replace("&", "\\&").replace("{", "\\{").replace("}", "\\}")
+			.replace("<b>", "\\textbf{").replace("</b>", "}")
+			.replace("<i>", "\\textit{").replace("</i>", "}")
+			.replace("½", "\\nicefrac{1}{2}")
+			.replace("<sup>", "\\textsuperscript").replace("</sup>", "}")
+			.replace("¾", "\\nicefrac{3}{4}").replace("“", "``")
+			.replace("”", "''").replace("–", "---").replace("’", "'")
+			.replace("„", "``").replace("‟", "''").replace("‘", "'")
+			.replace("‗", "`").replace("\f", "")
+			.replace("¼", "\\nicefrac{1}{4}").replace("‑", "--")
+			.replace("─", "---").replace("—", "---").replace("\u037E", ";")
+			.replace("⅔", "\\nicefrac{2}{3}").replace("⅜", "\\nicefrac{3}{8}")
+			.replace("⅞", "\\nicefrac{7}{8}");
+	}
+
+	@Test
+	public void quotingTest() throws IOException {
+		final List<String> samples = List.of("", "plain text", "1s & 2s {set}",
+				"1L <b>while</b> 2L <i>cast</i> to 2<sup>nd</sup> place",
+				"½ ¼ ¾ ⅔ ⅜ ⅞ “quoted” „low‟ ‘single’ ‗ – — ─ ‑ \u037E",
+				"<\fb>not a tag</b", "<su<sup>p>", "<<b>>", "trailing <", "form\ffeed");
+		for (final String sample : samples) {
+			final StringBuilder builder = new StringBuilder();
+			LaTeXWriter.quote(builder, sample);
+			assertThat("Single-pass escaping should match the old replacement chain",
+					builder.toString(), is(legacyQuoted(sample)));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("HardcodedFileSeparator") // backslash is not a file separator
+	public void errorOffsetTest() {
+		final String input = """
+				\\documentclass{tartan}
+				\\begin{document}
+				\\begin{scdance}{Title}{Source}{Reel}{8x32}{2C (4C set)}
+				\\scfigure[1-8]{unterminated
+				""";
+		final ParseException except = assertThrows(ParseException.class,
+				() -> new LaTeXReader().readLaTeXProgram(input));
+		assertThat("Error offset should point at the unbalanced block",
+				except.getErrorOffset(), is(input.indexOf("{unterminated")));
+		final String stray = "\\documentclass{tartan}\n\\begin{document}\n!";
+		final ParseException strayExcept = assertThrows(ParseException.class,
+				() -> new LaTeXReader().readLaTeXProgram(stray));
+		assertThat("Error offset should point at the stray character",
+				strayExcept.getErrorOffset(), is(stray.indexOf('!')));
+	}
+
 	@Override
 	public String toString() {
 		return "LaTeXTest";